@@ -0,0 +1,212 @@
+package wzd.sync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * In-process stand-in for the RuneLite party server. Members are identified by name and
+ * get a member id when they connect; {@link #changeParty} has the semantics of
+ * PartyService.changeParty (leave the current party, then join the given one, null to only
+ * leave) and acknowledges the change the way PartyChanged would, by calling the member's
+ * listener on the caller's thread. {@link #send} relays a hub announcement to every member
+ * of the sender's party, the sender included, on the sender's thread.
+ * Join requests are counted in 100ms buckets so a run can report its peak join rate.
+ */
+final class LocalPartyServer {
+    private static final long BUCKET_NANOS = 100_000_000L;
+    private static final int BUCKETS_PER_SECOND = 10;
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, String> memberHubs = new HashMap<>();
+    private final Map<String, Set<String>> hubs = new HashMap<>();
+    private final Map<String, Consumer<String>> listeners = new HashMap<>();
+    private final Map<String, Consumer<HubAnnouncement>> receivers = new HashMap<>();
+    private final Map<String, Long> memberIds = new HashMap<>();
+    private final Map<Long, String> memberNames = new HashMap<>();
+
+    private int[] joinBuckets = new int[64];
+    private int joins;
+    private int leaves;
+
+    /**
+     * @return the member id the party server knows the member by
+     */
+    synchronized long connect(String member, Consumer<String> onPartyChanged, Consumer<HubAnnouncement> onAnnouncement) {
+        long id = memberIds.size() + 1;
+        memberIds.put(member, id);
+        memberNames.put(id, member);
+        listeners.put(member, onPartyChanged);
+        receivers.put(member, onAnnouncement);
+        return id;
+    }
+
+    /**
+     * The PartyService calls of one member, other than changeParty
+     */
+    PartyLink link(String member) {
+        // Every call the plugin makes is answered here, the party service is never reached
+        return new PartyLink(null) {
+            @Override
+            String getPassphrase() {
+                return getHub(member);
+            }
+
+            @Override
+            boolean isInParty() {
+                return getHub(member) != null;
+            }
+
+            @Override
+            long getLocalMemberId() {
+                return getMemberId(member);
+            }
+
+            @Override
+            long[] getMemberIds() {
+                return LocalPartyServer.this.getMemberIds(member);
+            }
+
+            @Override
+            String getDisplayName(long memberId) {
+                return LocalPartyServer.this.getDisplayName(member, memberId);
+            }
+
+            @Override
+            void send(HubAnnouncement announcement) {
+                LocalPartyServer.this.send(member, announcement);
+            }
+        };
+    }
+
+    /**
+     * The PartyService.changeParty call of one member
+     */
+    void changeParty(String member, String hub) {
+        Consumer<String> listener;
+        synchronized (this) {
+            String previous = memberHubs.remove(member);
+            if (previous != null) {
+                Set<String> members = hubs.get(previous);
+                members.remove(member);
+                if (members.isEmpty()) {
+                    hubs.remove(previous);
+                }
+            }
+
+            if (hub == null) {
+                leaves++;
+            } else {
+                // Passphrases are case insensitive, like the hub names the plugin builds
+                String key = hub.toUpperCase();
+                memberHubs.put(member, key);
+                hubs.computeIfAbsent(key, k -> new HashSet<>()).add(member);
+                countJoin();
+            }
+            listener = listeners.get(member);
+        }
+
+        if (listener != null) {
+            listener.accept(hub);
+        }
+    }
+
+    /**
+     * The PartyService.send call of one member
+     */
+    void send(String member, HubAnnouncement announcement) {
+        List<Consumer<HubAnnouncement>> party = new ArrayList<>();
+        synchronized (this) {
+            String hub = memberHubs.get(member);
+            if (hub == null) {
+                return;
+            }
+            announcement.setMemberId(memberIds.get(member));
+            for (String other : hubs.get(hub)) {
+                party.add(receivers.get(other));
+            }
+        }
+
+        for (Consumer<HubAnnouncement> receiver : party) {
+            receiver.accept(announcement);
+        }
+    }
+
+    synchronized String getHub(String member) {
+        return memberHubs.get(member);
+    }
+
+    synchronized long getMemberId(String member) {
+        Long id = memberIds.get(member);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Ids of the members in the given member's party, that member included
+     */
+    synchronized long[] getMemberIds(String member) {
+        String hub = memberHubs.get(member);
+        if (hub == null) {
+            return new long[0];
+        }
+
+        Set<String> party = hubs.get(hub);
+        long[] ids = new long[party.size()];
+        int i = 0;
+        for (String other : party) {
+            ids[i++] = memberIds.get(other);
+        }
+        return ids;
+    }
+
+    /**
+     * Name of a member as seen by the given member, which only knows the members of its own party
+     */
+    synchronized String getDisplayName(String member, long memberId) {
+        String name = memberNames.get(memberId);
+        String hub = memberHubs.get(member);
+        return name != null && hub != null && hub.equals(memberHubs.get(name)) ? name : null;
+    }
+
+    synchronized int getJoins() {
+        return joins;
+    }
+
+    synchronized int getLeaves() {
+        return leaves;
+    }
+
+    synchronized int getHubCount() {
+        return hubs.size();
+    }
+
+    /**
+     * Most join requests seen within any one second window, in 100ms steps
+     */
+    synchronized int getPeakJoinsPerSecond() {
+        int peak = 0;
+        int window = 0;
+        for (int i = 0; i < joinBuckets.length; i++) {
+            window += joinBuckets[i];
+            if (i >= BUCKETS_PER_SECOND) {
+                window -= joinBuckets[i - BUCKETS_PER_SECOND];
+            }
+            peak = Math.max(peak, window);
+        }
+        return peak;
+    }
+
+    private void countJoin() {
+        joins++;
+        int bucket = (int) ((System.nanoTime() - startNanos) / BUCKET_NANOS);
+        if (bucket >= joinBuckets.length) {
+            joinBuckets = Arrays.copyOf(joinBuckets, Math.max(bucket + 1, joinBuckets.length * 2));
+        }
+        joinBuckets[bucket]++;
+    }
+}
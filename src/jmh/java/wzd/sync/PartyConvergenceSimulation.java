@@ -0,0 +1,368 @@
+package wzd.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.runelite.api.GameState;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPostFired;
+import net.runelite.api.events.VarbitChanged;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.events.PartyChanged;
+
+/**
+ * Load test of many plugin instances against a {@link LocalPartyServer}. Clients are
+ * grouped into teams of five, and every team runs the same script with a random start
+ * offset: the team forms and enters the raid, the leader changes, the team hops worlds,
+ * and the team leaves. Each member sees HUD changes with its own lag of up to
+ * {@link #MAX_HUD_LAG_TICKS}, like real clients whose HUDs don't redraw on the same tick.
+ * <p>
+ * After every scripted step the harness measures how long it takes until every member of
+ * the team is in the hub the step calls for on the server, and reports those convergence
+ * times per step together with the peak join request rate the server saw.
+ * <p>
+ * Plugins are driven through their event handlers, on one simulation thread standing in for
+ * every client thread: the raid varbit, HUD redraws, game ticks and world hops. Party changes
+ * go through each plugin's real {@link PartyTransitionExecutor}, and PartyChanged and hub
+ * announcements come back through the server on whichever thread sent them, to be picked up
+ * at the end of the member's next tick the way ClientThread.invoke would.
+ * <p>
+ * Usage: {@code PartyConvergenceSimulation [clients] [tickMs] [seed]}
+ */
+public final class PartyConvergenceSimulation {
+    static final int TEAM_SIZE = TobHudNames.SLOTS;
+    static final int MAX_HUD_LAG_TICKS = 2;
+
+    private static final int PHASE_TICKS = 25;
+    private static final int MAX_START_OFFSET_TICKS = 10;
+    private static final int FIRST_WORLD = 302;
+    private static final int TOB_VARBIT = 6440;
+
+    private static final GameTick GAME_TICK = new GameTick();
+    private static final ScriptPostFired SCRIPT_POST_FIRED = new ScriptPostFired();
+
+    enum Step {
+        FORM("Team formed"),
+        LEADER_CHANGE("Leader change"),
+        WORLD_HOP("World hop"),
+        LEAVE("Raid left");
+
+        private final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    private final LocalPartyServer server = new LocalPartyServer();
+    private final List<Team> teams = new ArrayList<>();
+    private final LatencyHistogram[] convergence = new LatencyHistogram[Step.values().length];
+    private final int[] convergedTeams = new int[Step.values().length];
+    private final int[] maxConvergenceTicks = new int[Step.values().length];
+    private final long tickNanos;
+
+    private int tick;
+
+    PartyConvergenceSimulation(int clients, long tickMs, long seed) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        for (int i = 0; i < convergence.length; i++) {
+            convergence[i] = new LatencyHistogram();
+        }
+
+        Random random = new Random(seed);
+        int teamCount = Math.max(1, clients / TEAM_SIZE);
+        for (int t = 0; t < teamCount; t++) {
+            teams.add(new Team(t, FIRST_WORLD + t % 100, random.nextInt(MAX_START_OFFSET_TICKS + 1), random));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long tickMs = args.length > 1 ? Long.parseLong(args[1]) : 600;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        PartyConvergenceSimulation simulation = new PartyConvergenceSimulation(clients, tickMs, seed);
+        try {
+            simulation.run();
+        } finally {
+            simulation.stop();
+        }
+        System.out.println(simulation.report());
+    }
+
+    void run() throws InterruptedException {
+        int lastTick = MAX_START_OFFSET_TICKS + Step.values().length * PHASE_TICKS;
+        long next = System.nanoTime();
+        for (tick = 0; tick <= lastTick; tick++) {
+            for (Team team : teams) {
+                team.step();
+            }
+            for (Team team : teams) {
+                team.checkConvergence();
+            }
+
+            next += tickNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+        }
+    }
+
+    void stop() {
+        for (Team team : teams) {
+            for (Member member : team.members) {
+                Fakes.stop(member.plugin);
+            }
+        }
+    }
+
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(teams.size() * TEAM_SIZE).append(" clients in ").append(teams.size()).append(" teams, ")
+                .append(TimeUnit.NANOSECONDS.toMillis(tickNanos)).append("ms ticks\n");
+        sb.append(String.format("%-14s %9s %9s %9s %9s %9s%n", "Step", "Converged", "p50 ms", "p99 ms", "max ms", "max ticks"));
+        for (Step step : Step.values()) {
+            int i = step.ordinal();
+            sb.append(String.format("%-14s %4d/%-4d %9.1f %9.1f %9.1f %9d%n", step.label,
+                    convergedTeams[i], teams.size(),
+                    millis(convergence[i].getValueAt(0.5)),
+                    millis(convergence[i].getValueAt(0.99)),
+                    millis(convergence[i].getMax()),
+                    maxConvergenceTicks[i]));
+        }
+        sb.append("Join requests: ").append(server.getJoins())
+                .append(", leave requests: ").append(server.getLeaves())
+                .append(", peak join rate: ").append(server.getPeakJoinsPerSecond()).append("/s")
+                .append(", hubs left open: ").append(server.getHubCount());
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private final class Team {
+        private final Member[] members = new Member[TEAM_SIZE];
+        private final int startTick;
+        private final int hopWorld;
+
+        private Step step;
+        private String expectedHub;
+        private long stepNanos;
+        private int stepTick;
+        private boolean converged = true;
+
+        Team(int id, int world, int startTick, Random random) {
+            this.startTick = startTick;
+            this.hopWorld = world + 100;
+            for (int i = 0; i < TEAM_SIZE; i++) {
+                members[i] = new Member("T" + id + "P" + i, world, random.nextInt(MAX_HUD_LAG_TICKS + 1));
+            }
+        }
+
+        void step() {
+            int local = tick - startTick;
+            if (local >= 0 && local % PHASE_TICKS == 0 && local / PHASE_TICKS < Step.values().length) {
+                begin(Step.values()[local / PHASE_TICKS]);
+            }
+
+            for (Member member : members) {
+                member.tick();
+            }
+        }
+
+        private void begin(Step next) {
+            switch (next) {
+                case FORM:
+                    for (Member member : members) {
+                        member.varbit(TOB_VARBIT, 1);
+                        member.showHud(roster(0), tick);
+                    }
+                    expectedHub = SyncHubName.format(members[0].world, members[0].name);
+                    break;
+                case LEADER_CHANGE:
+                    for (Member member : members) {
+                        member.showHud(roster(1), tick);
+                    }
+                    expectedHub = SyncHubName.format(members[0].world, members[1].name);
+                    break;
+                case WORLD_HOP:
+                    for (Member member : members) {
+                        member.hop(hopWorld, tick);
+                    }
+                    expectedHub = SyncHubName.format(hopWorld, members[1].name);
+                    break;
+                case LEAVE:
+                    for (Member member : members) {
+                        member.varbit(TOB_VARBIT, 0);
+                    }
+                    expectedHub = null;
+                    break;
+            }
+
+            step = next;
+            stepNanos = System.nanoTime();
+            stepTick = tick;
+            converged = false;
+        }
+
+        void checkConvergence() {
+            if (converged || step == null) {
+                return;
+            }
+
+            for (Member member : members) {
+                String hub = server.getHub(member.name);
+                if (expectedHub == null ? hub != null : !expectedHub.equalsIgnoreCase(hub)) {
+                    return;
+                }
+            }
+
+            converged = true;
+            int i = step.ordinal();
+            convergedTeams[i]++;
+            convergence[i].record(System.nanoTime() - stepNanos);
+            maxConvergenceTicks[i] = Math.max(maxConvergenceTicks[i], tick - stepTick);
+        }
+
+        /**
+         * HUD names text with the given member first
+         */
+        private String roster(int leader) {
+            StringBuilder sb = new StringBuilder(members[leader].name);
+            for (int i = 0; i < TEAM_SIZE; i++) {
+                if (i != leader) {
+                    sb.append("<br>").append(members[i].name);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final class Member {
+        private final String name;
+        private final int hudLag;
+        private final Fakes.HudNames hud = new Fakes.HudNames();
+        private final MemberClientThread clientThread = new MemberClientThread();
+        private final ToBPartyHubPlugin plugin;
+
+        private volatile int world;
+        private String pendingHud;
+        private int pendingHudTick = -1;
+        private int pendingHopWorld;
+        private int pendingHopTick = -1;
+        private boolean hopping;
+
+        Member(String name, int world, int hudLag) {
+            this.name = name;
+            this.world = world;
+            this.hudLag = hudLag;
+
+            FlightRecorder recorder = new FlightRecorder();
+            SyncLatency latency = new SyncLatency();
+            plugin = Fakes.plugin(Fakes.client(() -> this.world, name, hud), Fakes.config(true, 2),
+                    new PartyTransitionExecutor(hub -> server.changeParty(name, hub), recorder, latency),
+                    recorder, latency, clientThread, server.link(name));
+            // The plugin only reads the passphrase
+            server.connect(name, hub -> plugin.onPartyChanged(new PartyChanged(hub, 0L)), plugin::onHubAnnouncement);
+        }
+
+        void showHud(String text, int at) {
+            pendingHud = text;
+            pendingHudTick = at + hudLag;
+        }
+
+        void hop(int newWorld, int at) {
+            pendingHopWorld = newWorld;
+            pendingHopTick = at + hudLag;
+        }
+
+        void varbit(int varbitId, int value) {
+            VarbitChanged event = new VarbitChanged();
+            event.setVarbitId(varbitId);
+            event.setValue(value);
+            clientThread.run(() -> plugin.onVarbitChanged(event));
+        }
+
+        /**
+         * One client tick: the game tick, lagged world hops and HUD redraws, then the work
+         * invoked on this client since its last tick
+         */
+        void tick() {
+            clientThread.run(this::frame);
+        }
+
+        private void frame() {
+            plugin.onGameTick(GAME_TICK);
+
+            if (hopping) {
+                hopping = false;
+                gameState(GameState.LOGGED_IN);
+            }
+
+            if (pendingHopTick == tick) {
+                pendingHopTick = -1;
+                gameState(GameState.HOPPING);
+                world = pendingHopWorld;
+                // Logged in on the new world a tick later
+                hopping = true;
+            }
+
+            if (pendingHudTick == tick) {
+                pendingHudTick = -1;
+                hud.text = pendingHud;
+                plugin.onScriptPostFired(SCRIPT_POST_FIRED);
+            }
+        }
+
+        private void gameState(GameState gameState) {
+            GameStateChanged event = new GameStateChanged();
+            event.setGameState(gameState);
+            plugin.onGameStateChanged(event);
+        }
+    }
+
+    /**
+     * Client thread of one member. Work invoked while that member is running on the simulation
+     * thread runs straight away; work invoked from anywhere else, the transition threads and
+     * other members' announcements included, waits for the end of the member's next frame,
+     * together with its invokeLater work.
+     */
+    private static final class MemberClientThread extends ClientThread {
+        private final ConcurrentLinkedQueue<Runnable> queued = new ConcurrentLinkedQueue<>();
+        private final Thread simulationThread = Thread.currentThread();
+        private boolean running;
+
+        @Override
+        public void invoke(Runnable r) {
+            if (Thread.currentThread() == simulationThread && running) {
+                r.run();
+            } else {
+                queued.add(r);
+            }
+        }
+
+        @Override
+        public void invokeLater(Runnable r) {
+            queued.add(r);
+        }
+
+        void run(Runnable frame) {
+            running = true;
+            try {
+                frame.run();
+                Runnable r;
+                while ((r = queued.poll()) != null) {
+                    r.run();
+                }
+            } finally {
+                running = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package wzd.sync;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full handleToBPartyChange decision (HUD, world and player sync, then the reducer)
+ * against a fake client, either with the team unchanged (the common case) or with the
+ * leader flipping on every call so each decision ends in a join.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartyDecisionBenchmark {
+    private static final String TEAM = "WiseOldMan<br>Zezima<br>LynxTitan<br>B0aty<br>Woox";
+    private static final String REFRESHED_TEAM = "Zezima<br>WiseOldMan<br>LynxTitan<br>B0aty<br>Woox";
+
+    private final Fakes.HudNames hud = new Fakes.HudNames();
+    private final Fakes.PartyCalls partyCalls = new Fakes.PartyCalls();
+    private ToBPartyHubPlugin plugin;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        hud.text = TEAM;
+        plugin = Fakes.plugin(Fakes.client(330, "Woox", hud), Fakes.config(true), partyCalls);
+        plugin.dispatch(SyncInput.RAID_ENTERED);
+        plugin.handleToBPartyChange();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fakes.stop(plugin);
+    }
+
+    @Benchmark
+    public void teamUnchanged() {
+        hud.text = TEAM;
+        plugin.handleToBPartyChange();
+    }
+
+    @Benchmark
+    public void leaderChanged() {
+        flip = !flip;
+        hud.text = flip ? REFRESHED_TEAM : TEAM;
+        plugin.handleToBPartyChange();
+    }
+}
@@ -0,0 +1,84 @@
+package wzd.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Headless decision throughput of the sync reducer: idle ticks, and a scripted raid
+ * lobby (enter, leader shows up, ticks, team refresh, more ticks, leave) replayed over
+ * and over. Scores are per input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartySyncReducerBenchmark {
+    private static final int TICKS_PER_PHASE = 100;
+    private static final SyncInput[] RAID = raid();
+
+    private final List<SyncEffect> effects = new ArrayList<>();
+    private PartySyncReducer reducer;
+    private SyncState inRaid;
+
+    @Setup
+    public void setUp() {
+        reducer = new PartySyncReducer(SyncSettings.DEFAULTS);
+
+        SyncState state = SyncState.INITIAL;
+        state = reducer.reduce(state, SyncInput.world(330), effects);
+        state = reducer.reduce(state, SyncInput.localPlayer("Woox"), effects);
+        state = reducer.reduce(state, SyncInput.RAID_ENTERED, effects);
+        inRaid = reducer.reduce(state, SyncInput.roster("Zezima"), effects);
+        effects.clear();
+    }
+
+    private static SyncInput[] raid() {
+        List<SyncInput> inputs = new ArrayList<>();
+        inputs.add(SyncInput.world(330));
+        inputs.add(SyncInput.localPlayer("Woox"));
+        inputs.add(SyncInput.RAID_ENTERED);
+        inputs.add(SyncInput.roster("Zezima"));
+        for (int i = 0; i < TICKS_PER_PHASE; i++) {
+            inputs.add(SyncInput.TICK);
+        }
+        inputs.add(SyncInput.roster("LynxTitan"));
+        inputs.add(SyncInput.PARTY_CHANGED);
+        for (int i = 0; i < TICKS_PER_PHASE; i++) {
+            inputs.add(SyncInput.TICK);
+        }
+        inputs.add(SyncInput.CHECK);
+        inputs.add(SyncInput.RAID_LEFT);
+        return inputs.toArray(new SyncInput[0]);
+    }
+
+    @Benchmark
+    public SyncState idleTick() {
+        return reducer.reduce(inRaid, SyncInput.TICK, effects);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * TICKS_PER_PHASE + 8)
+    public SyncState simulatedRaid() {
+        SyncState state = SyncState.INITIAL;
+        for (SyncInput input : RAID) {
+            state = reducer.reduce(state, input, effects);
+        }
+        effects.clear();
+        return state;
+    }
+}
@@ -0,0 +1,207 @@
+package wzd.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.runelite.api.GameState;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPostFired;
+import net.runelite.api.events.VarbitChanged;
+
+/**
+ * Replays a {@link SessionRecorder} recording through a plugin wired to fakes, as fast as
+ * it goes, and reports the joins and leaves it decided on and the time each kind of event
+ * took in the plugin's handlers.
+ * <p>
+ * Events reach the plugin through the same entry points the client would call. Work the
+ * plugin queued with invokeLater runs before the next tick, standing in for the end of the
+ * client's frame, and a HUD text change also counts as a HUD redraw. Party changes are
+ * carried out on the spot instead of going to a party server, so a replay is deterministic:
+ * the recording is replayed a number of times and the costs of the last, warmed up pass are
+ * reported, together with whether every pass made the same decisions.
+ * <p>
+ * Usage: {@code SessionReplay <recording> [passes]}
+ */
+public final class SessionReplay implements SessionRecorder.Handler {
+    enum Event {
+        TICK("Game tick"),
+        VARBIT("Varbit"),
+        GAME_STATE("Game state"),
+        HUD_NAMES("HUD names"),
+        WORLD("World"),
+        LOCAL_PLAYER("Local player");
+
+        private final String label;
+
+        Event(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Fakes.HudNames hud = new Fakes.HudNames();
+    private final Fakes.QueuedClientThread clientThread = new Fakes.QueuedClientThread();
+    private final GameTick gameTick = new GameTick();
+    private final VarbitChanged varbitChanged = new VarbitChanged();
+    private final GameStateChanged gameStateChanged = new GameStateChanged();
+    private final ScriptPostFired scriptPostFired = new ScriptPostFired();
+
+    private final LatencyHistogram[] costs = new LatencyHistogram[Event.values().length];
+    private final long[] counts = new long[Event.values().length];
+    private final List<String> decisions = new ArrayList<>();
+    private final ToBPartyHubPlugin plugin;
+
+    private int world;
+    private String localName;
+    private int tick;
+    private int joins;
+    private int leaves;
+
+    SessionReplay() {
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = new LatencyHistogram();
+        }
+
+        FlightRecorder recorder = new FlightRecorder();
+        SyncLatency latency = new SyncLatency();
+        plugin = Fakes.plugin(Fakes.client(() -> world, () -> localName, hud), Fakes.config(true, 2),
+                new ReplayTransitions(recorder, latency), recorder, latency, clientThread);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SessionReplay <recording> [passes]");
+            System.exit(2);
+        }
+
+        byte[] recording = Files.readAllBytes(Paths.get(args[0]));
+        int passes = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 5;
+
+        SessionReplay first = null;
+        SessionReplay replay = null;
+        long records = 0;
+        long elapsed = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            replay = new SessionReplay();
+            try {
+                long start = System.nanoTime();
+                records = SessionRecorder.read(new ByteArrayInputStream(recording), replay);
+                replay.clientThread.runQueued();
+                elapsed = System.nanoTime() - start;
+            } finally {
+                Fakes.stop(replay.plugin);
+            }
+
+            if (first == null) {
+                first = replay;
+            }
+        }
+
+        System.out.println(replay.report(args[0], recording.length, records, elapsed,
+                first.decisions.equals(replay.decisions)));
+    }
+
+    @Override
+    public void onTick() {
+        final long start = System.nanoTime();
+        clientThread.runQueued();
+        plugin.onGameTick(gameTick);
+        record(Event.TICK, start);
+        tick++;
+    }
+
+    @Override
+    public void onVarbit(int varbitId, int value) {
+        varbitChanged.setVarbitId(varbitId);
+        varbitChanged.setValue(value);
+        final long start = System.nanoTime();
+        plugin.onVarbitChanged(varbitChanged);
+        record(Event.VARBIT, start);
+    }
+
+    @Override
+    public void onGameState(GameState gameState) {
+        gameStateChanged.setGameState(gameState);
+        final long start = System.nanoTime();
+        plugin.onGameStateChanged(gameStateChanged);
+        record(Event.GAME_STATE, start);
+    }
+
+    @Override
+    public void onHudNames(String text) {
+        hud.text = text;
+        final long start = System.nanoTime();
+        plugin.onScriptPostFired(scriptPostFired);
+        record(Event.HUD_NAMES, start);
+    }
+
+    @Override
+    public void onWorld(int world) {
+        this.world = world;
+        counts[Event.WORLD.ordinal()]++;
+    }
+
+    @Override
+    public void onLocalPlayer(String name) {
+        this.localName = name;
+        counts[Event.LOCAL_PLAYER.ordinal()]++;
+    }
+
+    private void record(Event event, long start) {
+        costs[event.ordinal()].record(System.nanoTime() - start);
+        counts[event.ordinal()]++;
+    }
+
+    String report(String file, long bytes, long records, long elapsedNanos, boolean deterministic) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(file).append(": ").append(records).append(" events (").append(tick).append(" ticks) in ")
+                .append(bytes).append(" bytes, replayed in ")
+                .append(String.format("%.1f ms, %.0f events/s%n", elapsedNanos / 1_000_000.0,
+                        records * 1e9 / Math.max(1, elapsedNanos)));
+
+        sb.append("Decisions:\n");
+        for (String decision : decisions) {
+            sb.append("  ").append(decision).append('\n');
+        }
+        sb.append("Joins: ").append(joins).append(", leaves: ").append(leaves)
+                .append(deterministic ? "" : " (passes disagreed, the first pass decided differently)").append('\n');
+
+        sb.append(String.format("%-14s %9s %9s %9s %9s%n", "Event", "Count", "p50 ns", "p99 ns", "max ns"));
+        for (Event event : Event.values()) {
+            LatencyHistogram cost = costs[event.ordinal()];
+            sb.append(String.format("%-14s %9d %9d %9d %9d%n", event.label, counts[event.ordinal()],
+                    cost.getValueAt(0.5), cost.getValueAt(0.99), cost.getMax()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Carries out party changes right away and writes them down as decisions
+     */
+    private final class ReplayTransitions extends PartyTransitionExecutor {
+        ReplayTransitions(FlightRecorder recorder, SyncLatency latency) {
+            super(hub -> {
+            }, recorder, latency);
+        }
+
+        @Override
+        long join(String groupName, Runnable onJoined, Runnable onFailed) {
+            joins++;
+            decisions.add("tick " + tick + ": join " + groupName);
+            onJoined.run();
+            return currentGeneration();
+        }
+
+        @Override
+        long leave(Runnable onLeft, Runnable onFailed) {
+            leaves++;
+            decisions.add("tick " + tick + ": leave");
+            onLeft.run();
+            return currentGeneration();
+        }
+    }
+}
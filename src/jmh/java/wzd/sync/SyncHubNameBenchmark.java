@@ -0,0 +1,43 @@
+package wzd.sync;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sync hub classification (the single pass scan and the old regex) and hub name derivation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncHubNameBenchmark {
+    @Param({"330WISEOLDMAN", "My Clan Hub"})
+    public String groupName;
+
+    @Benchmark
+    public boolean classify() {
+        return SyncHubName.isSyncHub(groupName);
+    }
+
+    @Benchmark
+    public boolean legacyRegex() {
+        return groupName.length() >= 4 && groupName.matches("^\\d{3,4}[A-Z0-9]+$");
+    }
+
+    @Benchmark
+    public String deriveHubName() {
+        return SyncHubName.format(330, "Wise Old Man");
+    }
+}
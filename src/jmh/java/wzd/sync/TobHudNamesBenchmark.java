@@ -0,0 +1,66 @@
+package wzd.sync;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ToB HUD names parsing: the unchanged-text short-circuit taken on almost every
+ * tick, a full scan of a changed text, and the old trim/split parse for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TobHudNamesBenchmark {
+    private static final String FULL_TEAM = "Wise Old Man<br>Zezima<br>Lynx Titan<br>B0aty<br>Woox";
+    private static final String OTHER_TEAM = "Woox<br>Zezima<br>Lynx Titan<br>B0aty<br>-";
+
+    private TobHudNames names;
+    private String sameContents;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        names = new TobHudNames();
+        names.update(FULL_TEAM);
+        sameContents = new String(FULL_TEAM.toCharArray());
+    }
+
+    @Benchmark
+    public boolean unchangedReference() {
+        return names.update(FULL_TEAM);
+    }
+
+    @Benchmark
+    public boolean unchangedContents() {
+        return names.update(sameContents);
+    }
+
+    @Benchmark
+    public String changedText() {
+        flip = !flip;
+        names.update(flip ? OTHER_TEAM : FULL_TEAM);
+        return names.getLeader();
+    }
+
+    @Benchmark
+    public String legacySplit() {
+        String namesText = FULL_TEAM.trim();
+        if (!namesText.isEmpty() && !namesText.equals("-<br>-<br>-<br>-<br>-")) {
+            return namesText.split("<br>")[0].trim();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+package wzd.sync;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a failing party server for a while. After failureThreshold consecutive
+ * failures the breaker opens and refuses calls for openNanos; then a single trial call is
+ * let through (half open), which closes the breaker on success or opens it again on failure.
+ * Thread safe; written from the transition thread, read by the overlay and trace command.
+ */
+final class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long failures;
+    private long rejections;
+    private long trips;
+
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this(failureThreshold, openNanos, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether a call may go ahead now. Each true must be followed by onSuccess or onFailure.
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openNanos) {
+                    rejections++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    rejections++;
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            trips++;
+        }
+    }
+
+    synchronized State getState() {
+        // An open breaker whose wait is over lets the next call through
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * How long an open breaker keeps refusing calls, 0 once a call may be tried
+     */
+    synchronized long nanosUntilAllowed() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openNanos - (clock.getAsLong() - openedAt));
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    synchronized long getFailures() {
+        return failures;
+    }
+
+    synchronized long getRejections() {
+        return rejections;
+    }
+
+    synchronized long getTrips() {
+        return trips;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{state=" + state + ", consecutiveFailures=" + consecutiveFailures +
+                ", failures=" + failures + ", rejections=" + rejections + ", trips=" + trips + '}';
+    }
+}
@@ -0,0 +1,67 @@
+package wzd.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every plugin setting read once into plain final fields. Config getters go through a
+ * dynamic proxy and ConfigManager's string lookups, so the plugin takes a new snapshot
+ * when a ConfigChanged for its group arrives and everything else reads from the snapshot.
+ */
+final class ConfigSnapshot {
+    private final boolean enableChatMessages;
+    private final boolean notificationOverlay;
+    private final boolean desktopNotifications;
+    private final long tickBudgetNanos;
+    private final boolean showLatencyOverlay;
+    private final boolean recordSessions;
+    private final SyncSettings sync;
+
+    private ConfigSnapshot(ToBPartyHubPluginConfig config) {
+        enableChatMessages = config.enableChatMessages();
+        notificationOverlay = config.notificationOverlay();
+        desktopNotifications = config.desktopNotifications();
+        tickBudgetNanos = TimeUnit.MICROSECONDS.toNanos(config.tickBudgetMicros());
+        showLatencyOverlay = config.showLatencyOverlay();
+        recordSessions = config.recordSessions();
+        sync = new SyncSettings(config.forceJoinMode(), config.autoLeaveWhenExitingToB(),
+                config.leaderStabilisationTicks(), config.predictiveJoin(), config.resumeAcrossReconnects());
+    }
+
+    static ConfigSnapshot of(ToBPartyHubPluginConfig config) {
+        return new ConfigSnapshot(config);
+    }
+
+    boolean isEnableChatMessages() {
+        return enableChatMessages;
+    }
+
+    boolean isNotificationOverlay() {
+        return notificationOverlay;
+    }
+
+    boolean isDesktopNotifications() {
+        return desktopNotifications;
+    }
+
+    /**
+     * Client thread time per tick for the plugin's handlers, 0 for no budget
+     */
+    long getTickBudgetNanos() {
+        return tickBudgetNanos;
+    }
+
+    boolean isShowLatencyOverlay() {
+        return showLatencyOverlay;
+    }
+
+    boolean isRecordSessions() {
+        return recordSessions;
+    }
+
+    /**
+     * The settings the sync reducer depends on
+     */
+    SyncSettings getSync() {
+        return sync;
+    }
+}
@@ -0,0 +1,124 @@
+package wzd.sync;
+
+import java.util.Arrays;
+
+import javax.inject.Singleton;
+
+/**
+ * Fixed-size ring buffer of recent sync events, kept in memory instead of logged.
+ * Recording an event stores a few primitives and a reference into preallocated
+ * arrays, so it does no formatting and no I/O. {@link #dump()} renders the
+ * buffer into a readable trace on demand or when something goes wrong.
+ */
+@Singleton
+class FlightRecorder {
+    enum Type {
+        /** a = varbit id, b = value */
+        VARBIT,
+        /** a = occupied slots, detail = leader */
+        HUD_PARSE,
+        /** a = slot, b = previous slot of a move, detail = change, extra = player */
+        ROSTER,
+        /** detail = decision label, extra = hub or leader it applies to */
+        DECISION,
+        /** detail = hub name */
+        JOIN,
+        /** detail = hub name */
+        LEAVE,
+        /** detail = error message */
+        ERROR,
+    }
+
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Type[] types = new Type[CAPACITY];
+    private final int[] ticks = new int[CAPACITY];
+    private final long[] nanos = new long[CAPACITY];
+    private final int[] as = new int[CAPACITY];
+    private final int[] bs = new int[CAPACITY];
+    private final Object[] details = new Object[CAPACITY];
+    private final Object[] extras = new Object[CAPACITY];
+
+    private long count;
+
+    void record(Type type, int tick, Object detail) {
+        record(type, tick, 0, 0, detail, null);
+    }
+
+    void record(Type type, int tick, Object detail, Object extra) {
+        record(type, tick, 0, 0, detail, extra);
+    }
+
+    void record(Type type, int tick, int a, int b) {
+        record(type, tick, a, b, null, null);
+    }
+
+    synchronized void record(Type type, int tick, int a, int b, Object detail, Object extra) {
+        int slot = (int) (count++ & MASK);
+        types[slot] = type;
+        ticks[slot] = tick;
+        nanos[slot] = System.nanoTime();
+        as[slot] = a;
+        bs[slot] = b;
+        details[slot] = detail;
+        extras[slot] = extra;
+    }
+
+    synchronized void clear() {
+        count = 0;
+        Arrays.fill(details, null);
+        Arrays.fill(extras, null);
+    }
+
+    /**
+     * Render the buffered events, oldest first, with times relative to the newest event
+     */
+    synchronized String dump() {
+        int size = (int) Math.min(count, CAPACITY);
+        StringBuilder sb = new StringBuilder(64 + size * 48);
+        sb.append("ToB Party Sync flight recorder (").append(size).append(" of ").append(count).append(" events)");
+
+        if (size == 0) {
+            return sb.toString();
+        }
+
+        long newest = nanos[(int) ((count - 1) & MASK)];
+        for (long i = count - size; i < count; i++) {
+            int slot = (int) (i & MASK);
+            sb.append('\n')
+                    .append(String.format("%9.3fms", (nanos[slot] - newest) / 1_000_000.0))
+                    .append(" tick ").append(ticks[slot])
+                    .append(' ').append(types[slot]);
+            appendDetail(sb, types[slot], as[slot], bs[slot], details[slot], extras[slot]);
+        }
+        return sb.toString();
+    }
+
+    private static void appendDetail(StringBuilder sb, Type type, int a, int b, Object detail, Object extra) {
+        switch (type) {
+            case VARBIT:
+                sb.append(' ').append(a).append('=').append(b);
+                break;
+            case HUD_PARSE:
+                sb.append(" slots=").append(a).append(" leader=").append(detail);
+                break;
+            case ROSTER:
+                sb.append(' ').append(detail).append(" '").append(extra).append("' slot ");
+                if (b >= 0) {
+                    sb.append(b).append("->");
+                }
+                sb.append(a);
+                break;
+            case DECISION:
+                sb.append(' ').append(detail);
+                if (extra != null) {
+                    sb.append(" '").append(extra).append('\'');
+                }
+                break;
+            default:
+                sb.append(' ').append(detail);
+                break;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package wzd.sync;
+
+import net.runelite.client.party.messages.PartyMemberMessage;
+
+/**
+ * Sent by the raid leader's client to its current party when it switches to the team hub,
+ * so members follow in one message round trip instead of each waiting for its own HUD.
+ * The roster fingerprint lets a member check the announcement is about its own team
+ * even while its HUD still shows the old order. Members only follow an announcement sent by
+ * the party member whose name is the announced leader, and only when that leader is on their HUD.
+ */
+class HubAnnouncement extends PartyMemberMessage {
+    private final String hub;
+    private final String leader;
+    private final int rosterFingerprint;
+
+    HubAnnouncement(String hub, String leader, int rosterFingerprint) {
+        this.hub = hub;
+        this.leader = leader;
+        this.rosterFingerprint = rosterFingerprint;
+    }
+
+    String getHub() {
+        return hub;
+    }
+
+    String getLeader() {
+        return leader;
+    }
+
+    int getRosterFingerprint() {
+        return rosterFingerprint;
+    }
+}
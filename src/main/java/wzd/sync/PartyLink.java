@@ -0,0 +1,66 @@
+package wzd.sync;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import net.runelite.client.party.PartyMember;
+import net.runelite.client.party.PartyService;
+
+/**
+ * The party service calls the plugin makes besides joining and leaving: the party we are in,
+ * its members, and the hub announcements sent to it.
+ * Kept apart from the plugin so the convergence simulation can route them through a party
+ * server of its own, the way the transition executor takes its changeParty call.
+ */
+class PartyLink {
+    private final PartyService partyService;
+
+    @Inject
+    PartyLink(PartyService partyService) {
+        this.partyService = partyService;
+    }
+
+    /**
+     * Passphrase of the party we are in, or null
+     */
+    String getPassphrase() {
+        return partyService.getPartyPassphrase();
+    }
+
+    boolean isInParty() {
+        return partyService.isInParty();
+    }
+
+    /**
+     * Our own member id, or -1 before the party server has assigned one
+     */
+    long getLocalMemberId() {
+        PartyMember local = partyService.getLocalMember();
+        return local != null ? local.getMemberId() : -1;
+    }
+
+    /**
+     * Ids of the members of the party we are in, ourselves included
+     */
+    long[] getMemberIds() {
+        List<PartyMember> members = partyService.getMembers();
+        long[] ids = new long[members.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = members.get(i).getMemberId();
+        }
+        return ids;
+    }
+
+    /**
+     * Display name of a party member, or null if they aren't in the party or haven't sent it yet
+     */
+    String getDisplayName(long memberId) {
+        PartyMember member = partyService.getMemberById(memberId);
+        return member != null ? member.getDisplayName() : null;
+    }
+
+    void send(HubAnnouncement announcement) {
+        partyService.send(announcement);
+    }
+}
@@ -0,0 +1,226 @@
+package wzd.sync;
+
+import java.util.List;
+
+/**
+ * The party sync decisions as a pure function of (state, input) to (new state, effects).
+ * It knows nothing about RuneLite: the plugin translates client events into
+ * {@link SyncInput}s and carries out the returned {@link SyncEffect}s, which makes the
+ * same logic drivable headlessly by benchmarks and simulations.
+ * <p>
+ * Effects are appended to a caller-owned list rather than returned in a new one, and an
+ * input that changes nothing returns the very same state, so the idle path allocates nothing.
+ * Hub names are classified by {@link SyncHubName}'s static scan, which keeps no state, so
+ * the output depends on nothing but the settings, the state and the input.
+ */
+final class PartySyncReducer {
+    private final SyncSettings settings;
+
+    PartySyncReducer(SyncSettings settings) {
+        this.settings = settings;
+    }
+
+    SyncSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Apply one input.
+     *
+     * @param effects receives the effects of this input, in the order they should be carried out
+     * @return the new state, which is {@code state} itself if nothing changed
+     */
+    SyncState reduce(SyncState state, SyncInput input, List<SyncEffect> effects) {
+        switch (input.getKind()) {
+            case TICK:
+                return state.getCandidateLeader() != null ? stabilise(state, effects) : state;
+            case CHECK:
+            case PARTY_CHANGED:
+                return state.isInRaid() ? evaluate(state, effects) : state;
+            case RAID_ENTERED:
+                return state.isInRaid() ? state : evaluate(state.withInRaid(true), effects);
+            case RAID_LEFT:
+                return leaveRaid(state, effects);
+            case ROSTER:
+                return rosterLeader(state, input.getText(), effects);
+            case ANNOUNCED_LEADER:
+                return announcedLeader(state, input.getText(), effects);
+            case PREDICTED_LEADER:
+                return predictLeader(state, input.getText(), effects);
+            case PREDICTION_EXPIRED:
+                return expirePrediction(state, effects);
+            case WORLD:
+                return state.withWorld(input.getValue());
+            case LOCAL_PLAYER:
+                return state.withLocalName(input.getText());
+            case PARTY_HUB:
+                return state.withCurrentHub(input.getText()).withBlockedHub(null);
+            case LOGGED_OUT:
+                return loggedOut(state);
+            case SHUTDOWN:
+                return shutDown(state, effects);
+            default:
+                throw new IllegalArgumentException("Unknown input " + input);
+        }
+    }
+
+    /**
+     * A leader read from the HUD. The first leader is taken as is; a change of leader has to
+     * stay on the HUD for the stabilisation window before it is acted on, so flicker and
+     * intermediate leaders during a reshuffle don't each cost a hub reconnect.
+     */
+    private SyncState rosterLeader(SyncState state, String leader, List<SyncEffect> effects) {
+        // An empty or still-loading HUD keeps the last known leader
+        if (leader == null) {
+            return state;
+        }
+
+        if (leader.equals(state.getLeader())) {
+            // Back to the accepted leader, whatever was pending was noise
+            return state.withCandidate(null, 0);
+        }
+
+        int window = settings.getLeaderStabilisationTicks();
+        if (window <= 0 || state.getLeader() == null || !state.isInRaid()) {
+            return updateLeader(state.withCandidate(null, 0), leader, effects);
+        }
+
+        if (leader.equals(state.getCandidateLeader())) {
+            return state;
+        }
+
+        // A different candidate restarts the window, dropping the intermediate one
+        return state.withCandidate(leader, 0);
+    }
+
+    /**
+     * A leader announced by the leader's own client. It has already waited out its own
+     * stabilisation window, so it is acted on straight away rather than becoming a candidate.
+     */
+    private SyncState announcedLeader(SyncState state, String leader, List<SyncEffect> effects) {
+        if (!state.isInRaid() || leader == null) {
+            return state;
+        }
+
+        if (leader.equals(state.getLeader())) {
+            return state.withCandidate(null, 0);
+        }
+        return updateLeader(state.withCandidate(null, 0), leader, effects);
+    }
+
+    /**
+     * Join the hub of a team we applied to or were accepted into before the raid starts,
+     * so the hub connection is made in the lobby rather than by all five members at once.
+     * Once in the raid the HUD is authoritative and predictions are ignored.
+     */
+    private SyncState predictLeader(SyncState state, String leader, List<SyncEffect> effects) {
+        if (!settings.isPredictiveJoin() || state.isInRaid() || leader == null || leader.equals(state.getLeader())) {
+            return state;
+        }
+        return evaluate(state.withLeader(leader).withCandidate(null, 0), effects);
+    }
+
+    private SyncState expirePrediction(SyncState state, List<SyncEffect> effects) {
+        if (state.isInRaid() || state.getLeader() == null) {
+            return state;
+        }
+
+        String predictedHub = state.getTargetHub();
+        SyncState next = state.withLeader(null).withBlockedHub(null);
+        if (predictedHub != null && predictedHub.equalsIgnoreCase(next.getCurrentHub())) {
+            effects.add(SyncEffect.leave(predictedHub, true));
+            return next.withCurrentHub(null);
+        }
+        return next;
+    }
+
+    private SyncState stabilise(SyncState state, List<SyncEffect> effects) {
+        int ticks = state.getCandidateTicks() + 1;
+        if (ticks < settings.getLeaderStabilisationTicks()) {
+            return state.withCandidate(state.getCandidateLeader(), ticks);
+        }
+        return updateLeader(state.withCandidate(null, 0), state.getCandidateLeader(), effects);
+    }
+
+    private SyncState updateLeader(SyncState state, String leader, List<SyncEffect> effects) {
+        String previousLeader = state.getLeader();
+        SyncState next = state.withLeader(leader);
+        if (!next.isInRaid()) {
+            return next;
+        }
+
+        if (previousLeader != null) {
+            // Merged with the "joined" notice that follows into one line by SyncNotifications
+            effects.add(SyncEffect.notify(SyncNotice.TEAM_REFRESHED, leader));
+        }
+        return evaluate(next, effects);
+    }
+
+    /**
+     * Join the target hub if we are not in it and are allowed to leave the current one
+     */
+    private SyncState evaluate(SyncState state, List<SyncEffect> effects) {
+        String targetHub = state.getTargetHub();
+        if (targetHub == null || state.isInTargetHub()) {
+            return state;
+        }
+
+        String currentHub = state.getCurrentHub();
+        if (!settings.isForceJoinMode() && currentHub != null && !SyncHubName.isSyncHub(currentHub)) {
+            // Tell the player once per target hub rather than on every check
+            if (targetHub.equals(state.getBlockedHub())) {
+                return state;
+            }
+
+            effects.add(SyncEffect.notify(SyncNotice.NON_SYNC_HUB, currentHub, targetHub));
+            return state.withBlockedHub(targetHub);
+        }
+
+        // Joining a hub leaves the current one, no separate leave effect needed
+        effects.add(SyncEffect.join(targetHub, false));
+        return state.withCurrentHub(targetHub).withBlockedHub(null);
+    }
+
+    private SyncState leaveRaid(SyncState state, List<SyncEffect> effects) {
+        if (!state.isInRaid()) {
+            return state;
+        }
+
+        SyncState next = state.withInRaid(false).withLeader(null).withBlockedHub(null).withCandidate(null, 0);
+        String currentHub = next.getCurrentHub();
+        if (!settings.isAutoLeaveWhenExitingToB() || currentHub == null) {
+            return next;
+        }
+
+        // Always leave sync party hubs when exiting; non-sync hubs only with force join enabled
+        if (SyncHubName.isSyncHub(currentHub) || settings.isForceJoinMode()) {
+            effects.add(SyncEffect.leave(currentHub, false));
+            return next.withCurrentHub(null);
+        }
+        return next;
+    }
+
+    /**
+     * The party connection is separate from the game connection, so the hub normally
+     * survives a hop or relog. Keeping it means a reconnect on the same world with the same
+     * team costs no party churn; the hub is only re-derived once the world or the roster
+     * actually changed, and PARTY_HUB reports it if the party did drop.
+     */
+    private SyncState loggedOut(SyncState state) {
+        // A pending leader change is read again from the HUD once it reloads
+        SyncState next = state.withCandidate(null, 0);
+        if (settings.isResumeAcrossReconnects()) {
+            return next;
+        }
+        return next.withCurrentHub(null).withBlockedHub(null);
+    }
+
+    private SyncState shutDown(SyncState state, List<SyncEffect> effects) {
+        String currentHub = state.getCurrentHub();
+        if (currentHub != null && SyncHubName.isSyncHub(currentHub)) {
+            effects.add(SyncEffect.leave(currentHub, false));
+            return state.withCurrentHub(null);
+        }
+        return state;
+    }
+}
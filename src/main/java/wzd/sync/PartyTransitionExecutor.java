@@ -0,0 +1,205 @@
+package wzd.sync;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.inject.Inject;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.runelite.client.party.PartyService;
+
+/**
+ * Runs party hub joins and leaves off the client thread.
+ * Every intent is tagged with a generation number, and a newer intent cancels
+ * any older one that has not reached the party service yet, so rapid leader
+ * changes collapse into a single final hub.
+ * <p>
+ * A failed party call is retried with jittered exponential backoff, and a circuit breaker
+ * stops calling a party server that keeps failing. An attempt the open breaker refuses
+ * waits for the breaker and doesn't count towards the attempts. When an intent gives up, its onFailed
+ * callback runs so the caller can resync with the party it is actually in.
+ */
+@Slf4j
+class PartyTransitionExecutor {
+    /**
+     * Joins wait this long before hitting the party service, which replaces the old
+     * Thread.sleep on the client thread and gives a newer intent a chance to win.
+     */
+    private static final long JOIN_SETTLE_DELAY_MS = 100;
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 4000;
+
+    private static final int BREAKER_FAILURE_THRESHOLD = 3;
+    private static final long BREAKER_OPEN_MS = 30_000;
+
+    private final Consumer<String> changeParty;
+    private final FlightRecorder recorder;
+    private final SyncLatency latency;
+    private final AtomicLong generation = new AtomicLong();
+    private final CircuitBreaker breaker;
+
+    private ScheduledExecutorService executor;
+    private Future<?> pending;
+
+    @Inject
+    PartyTransitionExecutor(PartyService partyService, FlightRecorder recorder, SyncLatency latency) {
+        this(partyService::changeParty, recorder, latency);
+    }
+
+    PartyTransitionExecutor(Consumer<String> changeParty, FlightRecorder recorder, SyncLatency latency) {
+        this(changeParty, recorder, latency,
+                new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, TimeUnit.MILLISECONDS.toNanos(BREAKER_OPEN_MS)));
+    }
+
+    PartyTransitionExecutor(Consumer<String> changeParty, FlightRecorder recorder, SyncLatency latency,
+                            CircuitBreaker breaker) {
+        this.changeParty = changeParty;
+        this.recorder = recorder;
+        this.latency = latency;
+        this.breaker = breaker;
+    }
+
+    synchronized void start() {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "tob-party-sync-transitions");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Superseded joins are cancelled all the time, don't keep them queued until their delay ends
+            pool.setRemoveOnCancelPolicy(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Stop accepting intents. Intents that are already queued still run, so a final
+     * leave submitted from shutDown reaches the party service.
+     */
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            pending = null;
+        }
+    }
+
+    /**
+     * Join (or create) the given party hub. onJoined runs on the transition thread
+     * once the party service accepted the change, onFailed once all attempts failed;
+     * either only if no newer intent has been submitted in the meantime.
+     */
+    long join(String groupName, Runnable onJoined, Runnable onFailed) {
+        return submit(groupName, onJoined, onFailed, JOIN_SETTLE_DELAY_MS);
+    }
+
+    /**
+     * Leave the current party hub.
+     */
+    long leave(Runnable onLeft, Runnable onFailed) {
+        return submit(null, onLeft, onFailed, 0);
+    }
+
+    long currentGeneration() {
+        return generation.get();
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Delay before retry number attempt (1 for the first retry): exponential up to a cap,
+     * with half of it random so clients that failed together don't retry together
+     */
+    static long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 16));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private synchronized long submit(String groupName, Runnable onDone, Runnable onFailed, long delayMs) {
+        final long gen = generation.incrementAndGet();
+
+        if (pending != null && pending.cancel(false)) {
+            log.debug("Cancelled stale party transition in favour of generation {}", gen);
+        }
+
+        if (executor == null) {
+            log.warn("Party transition executor not running, dropping transition to '{}'", groupName);
+            pending = null;
+            return gen;
+        }
+
+        final long submitted = System.nanoTime();
+        pending = executor.schedule(() -> run(gen, groupName, onDone, onFailed, submitted, 1),
+                delayMs, TimeUnit.MILLISECONDS);
+        return gen;
+    }
+
+    private void run(long gen, String groupName, Runnable onDone, Runnable onFailed, long submitted, int attempt) {
+        if (gen != generation.get()) {
+            log.debug("Skipping stale party transition {} to '{}'", gen, groupName);
+            return;
+        }
+
+        final long started = System.nanoTime();
+        if (attempt == 1) {
+            latency.record(SyncLatency.Stage.QUEUEING, started - submitted);
+        }
+
+        if (!breaker.allowRequest()) {
+            // Not a failed attempt: try the same attempt again once the breaker lets a call through
+            recorder.record(FlightRecorder.Type.ERROR, -1, "party server circuit open", groupName);
+            long waitMs = Math.max(BASE_BACKOFF_MS, TimeUnit.NANOSECONDS.toMillis(breaker.nanosUntilAllowed()));
+            schedule(gen, groupName, onDone, onFailed, submitted, attempt, waitMs);
+            return;
+        }
+
+        try {
+            changeParty.accept(groupName);
+            breaker.onSuccess();
+            latency.record(SyncLatency.Stage.PARTY_CALL, System.nanoTime() - started);
+        } catch (Exception e) {
+            breaker.onFailure();
+            recorder.record(FlightRecorder.Type.ERROR, -1, "changeParty failed", groupName);
+            log.warn("Failed to change to Party group {} (attempt {} of {}): {}",
+                    groupName, attempt, MAX_ATTEMPTS, e.getMessage());
+            retry(gen, groupName, onDone, onFailed, submitted, attempt);
+            return;
+        }
+
+        if (onDone != null && gen == generation.get()) {
+            onDone.run();
+        }
+    }
+
+    private void retry(long gen, String groupName, Runnable onDone, Runnable onFailed, long submitted, int attempt) {
+        if (attempt < MAX_ATTEMPTS) {
+            schedule(gen, groupName, onDone, onFailed, submitted, attempt + 1, backoffMillis(attempt));
+            return;
+        }
+
+        log.error("Giving up changing to Party group {} after {} attempts, {}\n{}",
+                groupName, MAX_ATTEMPTS, breaker, recorder.dump());
+        if (onFailed != null && gen == generation.get()) {
+            onFailed.run();
+        }
+    }
+
+    private synchronized void schedule(long gen, String groupName, Runnable onDone, Runnable onFailed, long submitted,
+                                       int attempt, long delayMs) {
+        // A newer intent or stop() supersedes the retry
+        if (gen == generation.get() && executor != null) {
+            pending = executor.schedule(() -> run(gen, groupName, onDone, onFailed, submitted, attempt),
+                    delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package wzd.sync;
+
+import net.runelite.api.gameval.InterfaceID;
+
+/**
+ * How the raid is recognised: the varbits that say whether we are in it (and changed
+ * party) and the widget the team roster is read from.
+ * Varbit state is cached from VarbitChanged payloads, see {@link RaidVarbits}.
+ */
+final class RaidDetector {
+    private final RaidVarbits varbits;
+    private final int raidVarbit;
+    private final int partyVarbit;
+    private final int rosterGroupId;
+    private final int rosterWidgetId;
+
+    RaidDetector(int raidVarbit, int partyVarbit, int rosterGroupId, int rosterWidgetId) {
+        this.varbits = new RaidVarbits(raidVarbit, partyVarbit);
+        this.raidVarbit = raidVarbit;
+        this.partyVarbit = partyVarbit;
+        this.rosterGroupId = rosterGroupId;
+        this.rosterWidgetId = rosterWidgetId;
+    }
+
+    /**
+     * Theatre of Blood: raid and party varbits, and the raid HUD with the leader first
+     */
+    static RaidDetector theatreOfBlood() {
+        return new RaidDetector(6440, 6441, InterfaceID.TOB_HUD, InterfaceID.TobHud.NAMES);
+    }
+
+    /**
+     * Whether the varbit is one of this raid's, so its changes are worth recording
+     */
+    boolean isTracked(int varbitId) {
+        return varbits.isTracked(varbitId);
+    }
+
+    RaidVarbits.Transition onVarbitChanged(int varbitId, int value) {
+        return varbits.update(varbitId, value);
+    }
+
+    void seed(int raidValue, int partyValue) {
+        varbits.seed(raidValue, partyValue);
+    }
+
+    int getRaidVarbit() {
+        return raidVarbit;
+    }
+
+    int getPartyVarbit() {
+        return partyVarbit;
+    }
+
+    boolean isInRaid() {
+        return varbits.isInRaid();
+    }
+
+    int getRosterGroupId() {
+        return rosterGroupId;
+    }
+
+    int getRosterWidgetId() {
+        return rosterWidgetId;
+    }
+}
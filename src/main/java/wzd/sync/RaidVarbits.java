@@ -0,0 +1,81 @@
+package wzd.sync;
+
+/**
+ * Cache of a raid's state and party varbits, fed from VarbitChanged payloads so that
+ * telling whether we entered, left or changed party needs no client reads.
+ * The raid counts as active while either varbit is non-zero. Client thread only.
+ */
+final class RaidVarbits {
+    enum Transition {
+        NONE,
+        ENTERED,
+        LEFT,
+        PARTY_CHANGED,
+    }
+
+    private final int raidVarbit;
+    private final int partyVarbit;
+
+    private int raidValue;
+    private int partyValue;
+
+    RaidVarbits(int raidVarbit, int partyVarbit) {
+        this.raidVarbit = raidVarbit;
+        this.partyVarbit = partyVarbit;
+    }
+
+    /**
+     * Set both values at once, e.g. from a client read when the plugin starts mid-raid
+     */
+    void seed(int raidValue, int partyValue) {
+        this.raidValue = raidValue;
+        this.partyValue = partyValue;
+    }
+
+    /**
+     * Feed one VarbitChanged event
+     *
+     * @return what the change means for the raid, NONE for other varbits or unchanged values
+     */
+    Transition update(int varbitId, int value) {
+        boolean wasInRaid = isInRaid();
+        if (varbitId == raidVarbit) {
+            if (value == raidValue) {
+                return Transition.NONE;
+            }
+            raidValue = value;
+        } else if (varbitId == partyVarbit) {
+            if (value == partyValue) {
+                return Transition.NONE;
+            }
+            partyValue = value;
+        } else {
+            return Transition.NONE;
+        }
+
+        boolean inRaid = isInRaid();
+        if (inRaid && !wasInRaid) {
+            return Transition.ENTERED;
+        }
+        if (!inRaid && wasInRaid) {
+            return Transition.LEFT;
+        }
+        return inRaid ? Transition.PARTY_CHANGED : Transition.NONE;
+    }
+
+    boolean isInRaid() {
+        return raidValue > 0 || partyValue > 0;
+    }
+
+    boolean isTracked(int varbitId) {
+        return varbitId == raidVarbit || varbitId == partyVarbit;
+    }
+
+    int getRaidValue() {
+        return raidValue;
+    }
+
+    int getPartyValue() {
+        return partyValue;
+    }
+}
@@ -0,0 +1,59 @@
+package wzd.sync;
+
+import java.util.Arrays;
+
+/**
+ * The last {@code capacity} nanosecond samples in a ring, for a rolling p99 and max.
+ * Recording is a store and an increment; quantiles sort a preallocated copy on demand.
+ */
+final class RollingStats {
+    private final long[] samples;
+    private final long[] sorted;
+    private long count;
+
+    RollingStats(int capacity) {
+        samples = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        samples[(int) (count++ % samples.length)] = nanos;
+    }
+
+    synchronized void reset() {
+        count = 0;
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    synchronized long getMax() {
+        long max = 0;
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99 for p99
+     * @return the sample at that quantile of the window, or 0 if nothing was recorded
+     */
+    synchronized long getValueAt(double quantile) {
+        int size = size();
+        if (size == 0) {
+            return 0;
+        }
+
+        System.arraycopy(samples, 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        int rank = (int) Math.ceil(quantile * size);
+        return sorted[Math.max(0, Math.min(size, rank) - 1)];
+    }
+
+    private int size() {
+        return (int) Math.min(count, samples.length);
+    }
+}
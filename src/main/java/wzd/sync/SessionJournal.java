@@ -0,0 +1,263 @@
+package wzd.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of the sync session (hub, leader, world, tick and wall time) in a
+ * small memory-mapped file, so a client that crashed or restarted mid-raid can pick up
+ * the team's hub again without waiting for the raid HUD.
+ * <p>
+ * Records are {@code [length][crc32][payload]}. A record only counts once its length is
+ * written, which happens last, and a zero length after it marks the end, so a record cut
+ * short by a crash is skipped on recovery, along with everything after it. Writes go to the
+ * page cache, which outlives the client process, and are forced to the file on close; when
+ * the file is full the journal starts over from the beginning.
+ * Client thread only.
+ */
+@Slf4j
+final class SessionJournal {
+    static final class Entry {
+        private final String hub;
+        private final String leader;
+        private final int world;
+        private final int tick;
+        private final long wallMillis;
+
+        Entry(String hub, String leader, int world, int tick, long wallMillis) {
+            this.hub = hub;
+            this.leader = leader;
+            this.world = world;
+            this.tick = tick;
+            this.wallMillis = wallMillis;
+        }
+
+        String getHub() {
+            return hub;
+        }
+
+        String getLeader() {
+            return leader;
+        }
+
+        int getWorld() {
+            return world;
+        }
+
+        int getTick() {
+            return tick;
+        }
+
+        long getWallMillis() {
+            return wallMillis;
+        }
+
+        /**
+         * Whether the session can still be resumed: we were in a team hub on the same world
+         * not longer than maxAgeMillis ago
+         */
+        boolean isResumable(int currentWorld, long nowMillis, long maxAgeMillis) {
+            return hub != null && leader != null && world == currentWorld
+                    && nowMillis - wallMillis >= 0 && nowMillis - wallMillis <= maxAgeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{hub=" + hub + ", leader=" + leader + ", world=" + world +
+                    ", tick=" + tick + ", wallMillis=" + wallMillis + '}';
+        }
+    }
+
+    private static final int SIZE = 16 * 1024;
+    private static final int HEADER = 8;
+    private static final int MAX_PAYLOAD = 256;
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer payload = ByteBuffer.allocate(MAX_PAYLOAD);
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    SessionJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Map the journal file, creating it if needed
+     *
+     * @return the last complete entry, or null if there is none or the file can't be used
+     */
+    Entry open() {
+        close();
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            return recover();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Session journal unavailable, resume after restart disabled: {}", e.getMessage());
+            close();
+            return null;
+        }
+    }
+
+    boolean isOpen() {
+        return buffer != null;
+    }
+
+    /**
+     * Append the current session; a null hub records that there is nothing to resume.
+     * Does nothing while the journal is closed, so a late caller never touches an unmapped buffer.
+     */
+    void append(String hub, String leader, int world, int tick, long wallMillis) {
+        if (buffer == null) {
+            return;
+        }
+
+        payload.clear();
+        payload.putLong(wallMillis).putInt(tick).putInt(world);
+        if (!putString(hub) || !putString(leader)) {
+            return;
+        }
+        payload.flip();
+
+        final int length = payload.remaining();
+        final int total = HEADER + length;
+        if (position + total + 4 > SIZE) {
+            position = 0;
+        }
+
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+
+        // End marker first, then payload and checksum, and the length last to commit the record
+        buffer.putInt(position + total, 0);
+        for (int i = 0; i < length; i++) {
+            buffer.put(position + HEADER + i, payload.get(i));
+        }
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        position += total;
+    }
+
+    /**
+     * Flush the journal to the file and unmap it
+     */
+    void close() {
+        MappedByteBuffer mapped = buffer;
+        buffer = null;
+        position = 0;
+        if (mapped != null) {
+            try {
+                mapped.force();
+            } catch (RuntimeException e) {
+                log.debug("Unable to flush session journal", e);
+            }
+            unmap(mapped);
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Unable to close session journal", e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Release the mapping now rather than whenever the buffer is collected, so reopening
+     * doesn't pile up mappings of the same file. Nothing may touch the buffer afterwards.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+            log.debug("Unable to unmap session journal: {}", e.toString());
+        }
+    }
+
+    private Entry recover() {
+        Entry last = null;
+        int pos = 0;
+        while (pos + HEADER <= SIZE) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || length > MAX_PAYLOAD || pos + HEADER + length > SIZE) {
+                break;
+            }
+
+            payload.clear();
+            for (int i = 0; i < length; i++) {
+                payload.put(buffer.get(pos + HEADER + i));
+            }
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                break;
+            }
+
+            payload.flip();
+            last = decode();
+            pos += HEADER + length;
+        }
+
+        position = pos;
+        return last;
+    }
+
+    private Entry decode() {
+        long wallMillis = payload.getLong();
+        int tick = payload.getInt();
+        int world = payload.getInt();
+        String hub = getString();
+        String leader = getString();
+        return new Entry(hub, leader, world, tick, wallMillis);
+    }
+
+    private boolean putString(String value) {
+        if (value == null) {
+            payload.putShort((short) -1);
+            return true;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + 2 > payload.remaining()) {
+            log.debug("Not journaling oversized value {}", value);
+            return false;
+        }
+        payload.putShort((short) bytes.length).put(bytes);
+        return true;
+    }
+
+    private String getString() {
+        int length = payload.getShort();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
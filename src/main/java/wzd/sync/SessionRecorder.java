@@ -0,0 +1,405 @@
+package wzd.sync;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.runelite.api.GameState;
+
+/**
+ * Compact binary recording of the inputs the plugin acts on (raid varbits, game ticks,
+ * game states, raid HUD names text, world and local player), so a session from a live raid
+ * can be replayed offline through the same sync logic.
+ * <p>
+ * After a {@code "TPSR"} magic and a version byte, every record is a one byte type followed
+ * by varints: runs of ticks are a single record with a count, the world and local player are
+ * only written when they change, and the HUD text is written as a delta against the last
+ * one (kept prefix, kept suffix and the chars in between). A text longer than 1024 chars
+ * is stored cut to that length, as a full snapshot rather than a delta. Records are gathered
+ * in a small buffer that is written out when full and on {@link #stop()}, so recording does
+ * no I/O on most ticks and allocates nothing. Client thread only.
+ */
+@Slf4j
+final class SessionRecorder {
+    static final int MAGIC = 0x54505352;
+    static final int VERSION = 1;
+
+    private static final int TICKS = 0;
+    private static final int VARBIT = 1;
+    private static final int GAME_STATE = 2;
+    private static final int HUD_NAMES = 3;
+    private static final int WORLD = 4;
+    private static final int LOCAL_PLAYER = 5;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // Longer strings are cut, HUD texts and player names are far shorter
+    private static final int MAX_CHARS = 1024;
+    // Type byte, up to three varints and the chars of a string
+    private static final int MAX_RECORD = 1 + 3 * 5 + 3 * MAX_CHARS;
+
+    /**
+     * Receives the records of a recording in order, see {@link #read(InputStream, Handler)}
+     */
+    interface Handler {
+        void onTick();
+
+        void onVarbit(int varbitId, int value);
+
+        void onGameState(GameState gameState);
+
+        /**
+         * The names text, null when the HUD is missing or hidden
+         */
+        void onHudNames(String text);
+
+        void onWorld(int world);
+
+        void onLocalPlayer(String name);
+    }
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private OutputStream out;
+    private File file;
+
+    private int pendingTicks;
+    private int lastWorld;
+    private String lastLocalName;
+    private String lastHudText;
+    // The last HUD text was cut at MAX_CHARS, so the reader doesn't have it to diff against
+    private boolean lastHudCut;
+
+    /**
+     * Start recording to a new file, replacing any recording in progress
+     *
+     * @return false if the file can't be written, in which case nothing is recorded
+     */
+    boolean start(File file) {
+        stop();
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            out = new FileOutputStream(file);
+        } catch (IOException e) {
+            log.warn("Unable to record session to {}: {}", file, e.getMessage());
+            return false;
+        }
+
+        this.file = file;
+        position = 0;
+        pendingTicks = 0;
+        lastWorld = 0;
+        lastLocalName = null;
+        lastHudText = null;
+        lastHudCut = false;
+        putInt(MAGIC);
+        buffer[position++] = (byte) VERSION;
+        return true;
+    }
+
+    boolean isRecording() {
+        return out != null;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Write out what is buffered and close the file
+     */
+    void stop() {
+        if (out == null) {
+            return;
+        }
+
+        flushTicks();
+        flush();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Unable to close session recording {}: {}", file, e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    void tick() {
+        if (out != null) {
+            pendingTicks++;
+        }
+    }
+
+    void varbit(int varbitId, int value) {
+        if (!begin(VARBIT)) {
+            return;
+        }
+        putVarint(varbitId);
+        putVarint(zigzag(value));
+    }
+
+    void gameState(GameState gameState) {
+        if (!begin(GAME_STATE)) {
+            return;
+        }
+        putVarint(zigzag(gameState.getState()));
+    }
+
+    void world(int world) {
+        if (out == null || world == lastWorld) {
+            return;
+        }
+        lastWorld = world;
+        begin(WORLD);
+        putVarint(world);
+    }
+
+    void localPlayer(String name) {
+        if (out == null || name == null || name.equals(lastLocalName)) {
+            return;
+        }
+        lastLocalName = name;
+        begin(LOCAL_PLAYER);
+        putString(name, 0, name.length());
+    }
+
+    void hudNames(String text) {
+        final String last = lastHudText;
+        if (out == null || text == last || text != null && text.equals(last)) {
+            return;
+        }
+        lastHudText = text;
+        begin(HUD_NAMES);
+
+        if (text == null) {
+            putVarint(0);
+            return;
+        }
+
+        int prefix = 0;
+        int suffix = 0;
+        if (last != null && !lastHudCut) {
+            int max = Math.min(text.length(), last.length());
+            while (prefix < max && text.charAt(prefix) == last.charAt(prefix)) {
+                prefix++;
+            }
+            while (suffix < max - prefix
+                    && text.charAt(text.length() - 1 - suffix) == last.charAt(last.length() - 1 - suffix)) {
+                suffix++;
+            }
+        }
+
+        if (text.length() - prefix - suffix > MAX_CHARS) {
+            // Too long to write in full: store what fits as a snapshot, and the next text as one too
+            prefix = 0;
+            suffix = 0;
+        }
+        lastHudCut = text.length() > MAX_CHARS;
+
+        putVarint(prefix + 1);
+        putVarint(suffix);
+        putString(text, prefix, text.length() - suffix);
+    }
+
+    /**
+     * Feed a recording to the handler, record by record. A record cut short at the end of
+     * the stream, as left behind by a client that didn't shut down cleanly, is dropped.
+     *
+     * @return the number of records read, counting every tick of a run
+     */
+    static long read(InputStream stream, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a session recording");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported session recording version " + version);
+        }
+
+        String hudText = null;
+        long records = 0;
+        StringBuilder chars = new StringBuilder();
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return records;
+            }
+
+            try {
+                switch (type) {
+                    case TICKS:
+                        for (int ticks = readVarint(in); ticks > 0; ticks--) {
+                            handler.onTick();
+                            records++;
+                        }
+                        continue;
+                    case VARBIT:
+                        int varbitId = readVarint(in);
+                        handler.onVarbit(varbitId, unzigzag(readVarint(in)));
+                        break;
+                    case GAME_STATE:
+                        handler.onGameState(GameState.of(unzigzag(readVarint(in))));
+                        break;
+                    case HUD_NAMES:
+                        int prefix = readVarint(in) - 1;
+                        if (prefix < 0) {
+                            hudText = null;
+                        } else {
+                            int suffix = readVarint(in);
+                            String last = hudText != null ? hudText : "";
+                            if (prefix > last.length() || suffix > last.length() - prefix) {
+                                throw new IOException("Corrupt HUD names record after " + records + " records");
+                            }
+                            chars.setLength(0);
+                            chars.append(last, 0, prefix);
+                            readString(in, chars);
+                            chars.append(last, last.length() - suffix, last.length());
+                            hudText = chars.toString();
+                        }
+                        handler.onHudNames(hudText);
+                        break;
+                    case WORLD:
+                        handler.onWorld(readVarint(in));
+                        break;
+                    case LOCAL_PLAYER:
+                        chars.setLength(0);
+                        readString(in, chars);
+                        handler.onLocalPlayer(chars.toString());
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type + " after " + records + " records");
+                }
+            } catch (EOFException e) {
+                return records;
+            }
+            records++;
+        }
+    }
+
+    private boolean begin(int type) {
+        if (out == null) {
+            return false;
+        }
+
+        flushTicks();
+        if (position + MAX_RECORD > BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = (byte) type;
+        return true;
+    }
+
+    private void flushTicks() {
+        if (pendingTicks == 0) {
+            return;
+        }
+
+        if (position + MAX_RECORD > BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = TICKS;
+        putVarint(pendingTicks);
+        pendingTicks = 0;
+    }
+
+    private void flush() {
+        if (out == null || position == 0) {
+            return;
+        }
+
+        try {
+            out.write(buffer, 0, position);
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Session recording to {} stopped: {}", file, e.getMessage());
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Already failed, nothing more to do
+            }
+            out = null;
+        }
+        position = 0;
+    }
+
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Char count, then each char as one to three UTF-8 bytes
+     */
+    private void putString(String text, int from, int to) {
+        int length = Math.min(to - from, MAX_CHARS);
+        putVarint(length);
+        for (int i = from; i < from + length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private static void readString(DataInputStream in, StringBuilder chars) throws IOException {
+        for (int length = readVarint(in); length > 0; length--) {
+            int b = in.readUnsignedByte();
+            if (b < 0x80) {
+                chars.append((char) b);
+            } else if (b < 0xE0) {
+                chars.append((char) ((b & 0x1F) << 6 | in.readUnsignedByte() & 0x3F));
+            } else {
+                int b2 = in.readUnsignedByte();
+                chars.append((char) ((b & 0x0F) << 12 | (b2 & 0x3F) << 6 | in.readUnsignedByte() & 0x3F));
+            }
+        }
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,95 @@
+package wzd.sync;
+
+/**
+ * Something the sync reducer wants done: a party hub change or a message to the player.
+ */
+final class SyncEffect {
+    enum Kind {
+        /** text = hub to join; quiet suppresses the "joined" chat message */
+        JOIN,
+        /** text = hub being left; quiet suppresses the "left" chat message */
+        LEAVE,
+        /** notice = message for the player, text and detail = what it is about */
+        NOTIFY,
+    }
+
+    private final Kind kind;
+    private final String text;
+    private final boolean quiet;
+    private final SyncNotice notice;
+    private final String detail;
+
+    private SyncEffect(Kind kind, String text, boolean quiet, SyncNotice notice, String detail) {
+        this.kind = kind;
+        this.text = text;
+        this.quiet = quiet;
+        this.notice = notice;
+        this.detail = detail;
+    }
+
+    static SyncEffect join(String groupName, boolean quiet) {
+        return new SyncEffect(Kind.JOIN, groupName, quiet, null, null);
+    }
+
+    static SyncEffect leave(String groupName, boolean quiet) {
+        return new SyncEffect(Kind.LEAVE, groupName, quiet, null, null);
+    }
+
+    static SyncEffect notify(SyncNotice notice, String subject) {
+        return notify(notice, subject, null);
+    }
+
+    static SyncEffect notify(SyncNotice notice, String subject, String detail) {
+        return new SyncEffect(Kind.NOTIFY, subject, false, notice, detail);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    boolean isQuiet() {
+        return quiet;
+    }
+
+    SyncNotice getNotice() {
+        return notice;
+    }
+
+    String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SyncEffect)) {
+            return false;
+        }
+        SyncEffect other = (SyncEffect) o;
+        return kind == other.kind && quiet == other.quiet && notice == other.notice
+                && (text == null ? other.text == null : text.equals(other.text))
+                && (detail == null ? other.detail == null : detail.equals(other.detail));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = kind.hashCode() * 31 + (text == null ? 0 : text.hashCode());
+        hash = hash * 31 + (notice == null ? 0 : notice.hashCode());
+        hash = hash * 31 + (detail == null ? 0 : detail.hashCode());
+        return hash * 31 + (quiet ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        if (notice != null) {
+            return kind + "(" + notice + ", " + text + (detail != null ? ", " + detail + ")" : ")");
+        }
+        return kind + "(" + text + (quiet ? ", quiet)" : ")");
+    }
+}
@@ -0,0 +1,53 @@
+package wzd.sync;
+
+/**
+ * Party hub names created by this plugin, following the pattern [World][LEADER]
+ * (e.g. 330WISEOLDMAN, 416JOHNCENA).
+ */
+final class SyncHubName {
+    private static final int MIN_LENGTH = 4;
+
+    private SyncHubName() {
+    }
+
+    /**
+     * Build the hub name for a raid team on the given world
+     */
+    static String format(int world, String leaderName) {
+        return world + leaderName.toUpperCase();
+    }
+
+    /**
+     * Single pass equivalent of matching {@code ^\d{3,4}[A-Z0-9]+$}: three world digits, then
+     * at least one more digit or upper case letter. Whether a fourth digit belongs to the world
+     * or the leader doesn't change the answer.
+     */
+    static boolean isSyncHub(String groupName) {
+        if (groupName == null) {
+            return false;
+        }
+
+        final int length = groupName.length();
+        if (length < MIN_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (!isDigit(groupName.charAt(i))) {
+                return false;
+            }
+        }
+
+        for (int i = 3; i < length; i++) {
+            char c = groupName.charAt(i);
+            if (!isDigit(c) && (c < 'A' || c > 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
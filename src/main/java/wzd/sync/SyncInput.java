@@ -0,0 +1,109 @@
+package wzd.sync;
+
+/**
+ * Something the sync reducer reacts to. Inputs without a payload are shared
+ * constants, so feeding the reducer every tick allocates nothing.
+ */
+final class SyncInput {
+    enum Kind {
+        /** A game tick passed while in the raid */
+        TICK,
+        /** Re-evaluate the hub with what is currently known (after a varbit change, or the safety-net poll) */
+        CHECK,
+        /** The raid varbits say we are now in a raid team */
+        RAID_ENTERED,
+        /** The raid varbits say we left the raid team */
+        RAID_LEFT,
+        /** The party varbit changed while in the raid */
+        PARTY_CHANGED,
+        /** text = leader shown first on the raid HUD */
+        ROSTER,
+        /** text = leader announced by the leader's own client over the party */
+        ANNOUNCED_LEADER,
+        /** text = leader of a team we applied to or were accepted into, from the party finder */
+        PREDICTED_LEADER,
+        /** A predicted team never turned into a raid */
+        PREDICTION_EXPIRED,
+        /** value = world number */
+        WORLD,
+        /** text = local player name */
+        LOCAL_PLAYER,
+        /** text = party hub we are actually in according to the party service, or null */
+        PARTY_HUB,
+        /** Logged out, hopping worlds or lost the connection to the game */
+        LOGGED_OUT,
+        /** The plugin is shutting down */
+        SHUTDOWN,
+    }
+
+    static final SyncInput TICK = new SyncInput(Kind.TICK, 0, null);
+    static final SyncInput CHECK = new SyncInput(Kind.CHECK, 0, null);
+    static final SyncInput RAID_ENTERED = new SyncInput(Kind.RAID_ENTERED, 0, null);
+    static final SyncInput RAID_LEFT = new SyncInput(Kind.RAID_LEFT, 0, null);
+    static final SyncInput PARTY_CHANGED = new SyncInput(Kind.PARTY_CHANGED, 0, null);
+    static final SyncInput PREDICTION_EXPIRED = new SyncInput(Kind.PREDICTION_EXPIRED, 0, null);
+    static final SyncInput LOGGED_OUT = new SyncInput(Kind.LOGGED_OUT, 0, null);
+    static final SyncInput SHUTDOWN = new SyncInput(Kind.SHUTDOWN, 0, null);
+
+    private final Kind kind;
+    private final int value;
+    private final String text;
+
+    private SyncInput(Kind kind, int value, String text) {
+        this.kind = kind;
+        this.value = value;
+        this.text = text;
+    }
+
+    static SyncInput roster(String leader) {
+        return new SyncInput(Kind.ROSTER, 0, leader);
+    }
+
+    static SyncInput announcedLeader(String leader) {
+        return new SyncInput(Kind.ANNOUNCED_LEADER, 0, leader);
+    }
+
+    static SyncInput predictedLeader(String leader) {
+        return new SyncInput(Kind.PREDICTED_LEADER, 0, leader);
+    }
+
+    static SyncInput world(int world) {
+        return new SyncInput(Kind.WORLD, world, null);
+    }
+
+    static SyncInput localPlayer(String name) {
+        return new SyncInput(Kind.LOCAL_PLAYER, 0, name);
+    }
+
+    static SyncInput partyHub(String groupName) {
+        return new SyncInput(Kind.PARTY_HUB, 0, groupName);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    int getValue() {
+        return value;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case WORLD:
+                return kind + "(" + value + ")";
+            case ROSTER:
+            case ANNOUNCED_LEADER:
+            case PREDICTED_LEADER:
+            case LOCAL_PLAYER:
+            case PARTY_HUB:
+                return kind + "(" + text + ")";
+            default:
+                return kind.name();
+        }
+    }
+}
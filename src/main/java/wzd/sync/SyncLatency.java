@@ -0,0 +1,58 @@
+package wzd.sync;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+/**
+ * Per-stage timings of getting into the right party hub, from the ToB varbit or HUD
+ * change that started it to the party service accepting the join.
+ */
+@Singleton
+class SyncLatency {
+    enum Stage {
+        /** Varbit flip or HUD change until the decision that produced a join (includes the leader change delay) */
+        DETECTION("Detect"),
+        /** The reducer call that produced the join */
+        DECISION("Decide"),
+        /** Join handed to the transition executor until it starts the party call */
+        QUEUEING("Queue"),
+        /** PartyService.changeParty */
+        PARTY_CALL("Party"),
+        /** Varbit flip or HUD change until the party call returned */
+        END_TO_END("Total");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    SyncLatency() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    LatencyHistogram get(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package wzd.sync;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+
+import javax.inject.Inject;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+
+/**
+ * Optional overlay showing p50/p95/p99/max of each party hub join stage, and the state
+ * of the circuit breaker around party server calls
+ */
+class SyncLatencyOverlay extends OverlayPanel {
+    private final ToBPartyHubPlugin plugin;
+    private final SyncLatency latency;
+    private final TickProfiler profiler;
+
+    @Inject
+    SyncLatencyOverlay(ToBPartyHubPlugin plugin, SyncLatency latency, TickProfiler profiler) {
+        super(plugin);
+        this.plugin = plugin;
+        this.latency = latency;
+        this.profiler = profiler;
+        setPosition(OverlayPosition.TOP_LEFT);
+    }
+
+    @Override
+    public Dimension render(Graphics2D graphics) {
+        ConfigSnapshot settings = plugin.getSettings();
+        if (settings == null || !settings.isShowLatencyOverlay()) {
+            return null;
+        }
+
+        panelComponent.getChildren().add(TitleComponent.builder()
+                .text("Party sync latency")
+                .build());
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Stage")
+                .right("p50 / p95 / p99 / max")
+                .build());
+
+        for (SyncLatency.Stage stage : SyncLatency.Stage.values()) {
+            LatencyHistogram histogram = latency.get(stage);
+            String values = histogram.getCount() == 0 ? "-"
+                    : format(histogram.getValueAt(0.50)) + " / "
+                    + format(histogram.getValueAt(0.95)) + " / "
+                    + format(histogram.getValueAt(0.99)) + " / "
+                    + format(histogram.getMax());
+
+            panelComponent.getChildren().add(LineComponent.builder()
+                    .left(stage.getLabel())
+                    .right(values)
+                    .build());
+        }
+
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Client thread")
+                .right("p99 / max")
+                .build());
+        addRolling("Per tick", profiler.getTicks());
+        for (TickProfiler.Handler handler : TickProfiler.Handler.values()) {
+            addRolling(handler.getLabel(), profiler.get(handler));
+        }
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Over budget")
+                .right(profiler.getOverBudgetTicks() + " ticks")
+                .build());
+
+        CircuitBreaker breaker = plugin.getPartyCircuitBreaker();
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Party server")
+                .right(breaker.getState() + " (" + breaker.getFailures() + " failed)")
+                .build());
+
+        return super.render(graphics);
+    }
+
+    private void addRolling(String label, RollingStats stats) {
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left(label)
+                .right(stats.getCount() == 0 ? "-" : format(stats.getValueAt(0.99)) + " / " + format(stats.getMax()))
+                .build());
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 1_000_000) {
+            return nanos / 1_000 + "us";
+        }
+        return nanos / 1_000_000 + "ms";
+    }
+}
@@ -0,0 +1,59 @@
+package wzd.sync;
+
+/**
+ * Messages for the player. A notice is posted with the names it is about and only turned
+ * into text once it is shown, so nothing is formatted while notifications are off.
+ */
+enum SyncNotice {
+    /** subject = hub */
+    JOINED("joined party hub ", null),
+    LEFT("left the party", null),
+    /** subject = new leader */
+    TEAM_REFRESHED("team refreshed - new leader: ", null),
+    /** subject = non-sync hub we are in, detail = the team's hub */
+    NON_SYNC_HUB("you are in non-sync party hub '",
+            "'. To join raid team party hub \"%\", enable force join in settings or manually join the group"),
+    /** subject = hub */
+    JOIN_FAILED("unable to join party hub ", null),
+    LEAVE_FAILED("unable to leave the party", null),
+    TRACE_WRITTEN("party sync trace written to the client log", null);
+
+    private final String prefix;
+    // Text after the subject, with % standing for the detail
+    private final String suffix;
+
+    SyncNotice(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Whether the notice says which hub we ended up in, so only the latest of a burst matters
+     */
+    boolean isHubChange() {
+        return this == JOINED || this == LEFT;
+    }
+
+    /**
+     * Whether this notice makes an earlier one of the same batch obsolete: a hub change
+     * replaces an earlier hub change, and a new leader an earlier new leader
+     */
+    boolean supersedes(SyncNotice earlier) {
+        return isHubChange() ? earlier.isHubChange() : this == TEAM_REFRESHED && earlier == TEAM_REFRESHED;
+    }
+
+    void appendTo(StringBuilder sb, String subject, String detail) {
+        sb.append(prefix);
+        if (subject != null) {
+            sb.append(subject);
+        }
+        if (suffix != null) {
+            int at = suffix.indexOf('%');
+            if (at < 0) {
+                sb.append(suffix);
+            } else {
+                sb.append(suffix, 0, at).append(detail).append(suffix, at + 1, suffix.length());
+            }
+        }
+    }
+}
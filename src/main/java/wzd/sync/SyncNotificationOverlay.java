@@ -0,0 +1,37 @@
+package wzd.sync;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+
+import javax.inject.Inject;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+
+/**
+ * Optional overlay showing the last party sync notification for a few seconds
+ */
+class SyncNotificationOverlay extends OverlayPanel {
+    private final SyncNotifications notifications;
+
+    @Inject
+    SyncNotificationOverlay(ToBPartyHubPlugin plugin, SyncNotifications notifications) {
+        super(plugin);
+        this.notifications = notifications;
+        setPosition(OverlayPosition.TOP_CENTER);
+    }
+
+    @Override
+    public Dimension render(Graphics2D graphics) {
+        String line = notifications.getOverlayLine();
+        if (line == null) {
+            return null;
+        }
+
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left(line)
+                .build());
+        return super.render(graphics);
+    }
+}
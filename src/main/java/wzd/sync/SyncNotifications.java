@@ -0,0 +1,223 @@
+package wzd.sync;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import net.runelite.api.ChatMessageType;
+import net.runelite.client.Notifier;
+import net.runelite.client.chat.ChatColorType;
+import net.runelite.client.chat.ChatMessageBuilder;
+import net.runelite.client.chat.ChatMessageManager;
+import net.runelite.client.chat.QueuedMessage;
+
+/**
+ * Collects the notices of a burst of sync activity and shows them as one line. Notices
+ * posted while a batch is open are deduplicated, and of the hub changes and of the leader
+ * changes only the last one is kept ("team refreshed" followed by "joined" reads as one sentence). A batch is
+ * flushed on the first tick without new notices, or after {@link #MAX_BATCH_TICKS}, and
+ * lines are rate limited per sink: chat and the overlay at most every
+ * {@link #MIN_LINE_TICKS}, desktop notifications at most every {@link #MIN_DESKTOP_TICKS}.
+ * <p>
+ * With every sink off, posting returns before anything is stored and ticks only bump a
+ * counter. Notices can be posted from any thread; ticks and output are client thread only.
+ */
+@Singleton
+class SyncNotifications {
+    static final int MAX_BATCH_TICKS = 3;
+    static final int MIN_LINE_TICKS = 5;
+    static final int MIN_DESKTOP_TICKS = 50;
+    // How long the overlay keeps showing the last line
+    static final int OVERLAY_TICKS = 16;
+
+    private static final int MAX_NOTICES = 8;
+
+    private final ChatMessageManager chatMessageManager;
+    private final Notifier notifier;
+
+    private final SyncNotice[] notices = new SyncNotice[MAX_NOTICES];
+    private final String[] subjects = new String[MAX_NOTICES];
+    private final String[] details = new String[MAX_NOTICES];
+    private final StringBuilder line = new StringBuilder(128);
+
+    private volatile boolean enabled;
+    private volatile int size;
+    private boolean chat;
+    private boolean overlay;
+    private boolean desktop;
+
+    private int dropped;
+    private boolean postedThisTick;
+    private int batchTicks;
+    private int tick;
+    private int lastLineTick = -MIN_LINE_TICKS;
+    private int lastDesktopTick = -MIN_DESKTOP_TICKS;
+
+    private String overlayLine;
+    private int overlayLineTick;
+
+    @Inject
+    SyncNotifications(ChatMessageManager chatMessageManager, Notifier notifier) {
+        this.chatMessageManager = chatMessageManager;
+        this.notifier = notifier;
+    }
+
+    /**
+     * Choose the sinks; with none, notices are dropped on post
+     */
+    synchronized void configure(boolean chat, boolean overlay, boolean desktop) {
+        this.chat = chat;
+        this.overlay = overlay;
+        this.desktop = desktop;
+        enabled = chat || overlay || desktop;
+        if (!enabled) {
+            clear();
+        }
+        if (!overlay) {
+            overlayLine = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void post(SyncNotice notice, String subject) {
+        post(notice, subject, null);
+    }
+
+    void post(SyncNotice notice, String subject, String detail) {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            postedThisTick = true;
+            for (int i = 0; i < size; i++) {
+                boolean same = notices[i] == notice && equal(subjects[i], subject) && equal(details[i], detail);
+                if (same || notice.supersedes(notices[i])) {
+                    // A repeat, or an earlier hub or leader change this one supersedes
+                    remove(i);
+                    break;
+                }
+            }
+
+            if (size == MAX_NOTICES) {
+                dropped++;
+                return;
+            }
+            notices[size] = notice;
+            subjects[size] = subject;
+            details[size] = detail;
+            size++;
+        }
+    }
+
+    /**
+     * Once per game tick: show the batch once it has settled and the rate limit allows
+     *
+     * @param flush false to hold the batch back, e.g. while the client thread is over budget
+     */
+    void onTick(boolean flush) {
+        tick++;
+        if (size == 0) {
+            return;
+        }
+
+        String text;
+        boolean toDesktop;
+        synchronized (this) {
+            batchTicks++;
+            boolean settled = !postedThisTick || batchTicks >= MAX_BATCH_TICKS;
+            postedThisTick = false;
+            if (!flush || !settled || tick - lastLineTick < MIN_LINE_TICKS) {
+                return;
+            }
+
+            text = render();
+            clear();
+            lastLineTick = tick;
+            toDesktop = desktop && tick - lastDesktopTick >= MIN_DESKTOP_TICKS;
+            if (toDesktop) {
+                lastDesktopTick = tick;
+            }
+        }
+
+        if (chat) {
+            sendChat(text);
+        }
+        if (overlay) {
+            overlayLine = text;
+            overlayLineTick = tick;
+        }
+        if (toDesktop) {
+            sendDesktop(text);
+        }
+    }
+
+    void sendChat(String text) {
+        chatMessageManager.queue(QueuedMessage.builder()
+                .type(ChatMessageType.CONSOLE)
+                .runeLiteFormattedMessage(new ChatMessageBuilder()
+                        .append(ChatColorType.HIGHLIGHT)
+                        .append(text)
+                        .build())
+                .build());
+    }
+
+    void sendDesktop(String text) {
+        notifier.notify(text);
+    }
+
+    /**
+     * The last line while it is recent enough to show, otherwise null
+     */
+    String getOverlayLine() {
+        String text = overlayLine;
+        return text != null && tick - overlayLineTick <= OVERLAY_TICKS ? text : null;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            notices[i] = null;
+            subjects[i] = null;
+            details[i] = null;
+        }
+        size = 0;
+        dropped = 0;
+        batchTicks = 0;
+        postedThisTick = false;
+    }
+
+    /**
+     * The batch as one sentence: notices in the order they were posted, separated by commas
+     */
+    private String render() {
+        line.setLength(0);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            notices[i].appendTo(line, subjects[i], details[i]);
+        }
+        if (dropped > 0) {
+            line.append(" (+").append(dropped).append(" more)");
+        }
+        line.append('.');
+        line.setCharAt(0, Character.toUpperCase(line.charAt(0)));
+        return line.toString();
+    }
+
+    private void remove(int index) {
+        System.arraycopy(notices, index + 1, notices, index, size - index - 1);
+        System.arraycopy(subjects, index + 1, subjects, index, size - index - 1);
+        System.arraycopy(details, index + 1, details, index, size - index - 1);
+        size--;
+        notices[size] = null;
+        subjects[size] = null;
+        details[size] = null;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,52 @@
+package wzd.sync;
+
+/**
+ * The plugin settings the sync reducer depends on, captured as plain values
+ */
+final class SyncSettings {
+    static final SyncSettings DEFAULTS = new SyncSettings(true, true, 2, false, false);
+
+    private final boolean forceJoinMode;
+    private final boolean autoLeaveWhenExitingToB;
+    private final int leaderStabilisationTicks;
+    private final boolean predictiveJoin;
+    private final boolean resumeAcrossReconnects;
+
+    SyncSettings(boolean forceJoinMode, boolean autoLeaveWhenExitingToB, int leaderStabilisationTicks,
+                 boolean predictiveJoin, boolean resumeAcrossReconnects) {
+        this.forceJoinMode = forceJoinMode;
+        this.autoLeaveWhenExitingToB = autoLeaveWhenExitingToB;
+        this.leaderStabilisationTicks = leaderStabilisationTicks;
+        this.predictiveJoin = predictiveJoin;
+        this.resumeAcrossReconnects = resumeAcrossReconnects;
+    }
+
+    boolean isForceJoinMode() {
+        return forceJoinMode;
+    }
+
+    boolean isAutoLeaveWhenExitingToB() {
+        return autoLeaveWhenExitingToB;
+    }
+
+    /**
+     * Ticks a new leader must stay on the HUD before we switch hubs, 0 to switch immediately
+     */
+    int getLeaderStabilisationTicks() {
+        return leaderStabilisationTicks;
+    }
+
+    /**
+     * Whether to join the team's hub from the party finder, before the raid varbits flip
+     */
+    boolean isPredictiveJoin() {
+        return predictiveJoin;
+    }
+
+    /**
+     * Whether the hub is kept over world hops, relogs and reconnects instead of forgotten
+     */
+    boolean isResumeAcrossReconnects() {
+        return resumeAcrossReconnects;
+    }
+}
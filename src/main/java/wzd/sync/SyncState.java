@@ -0,0 +1,167 @@
+package wzd.sync;
+
+/**
+ * Immutable party sync state. The hub the raid team should be in is derived
+ * once whenever the world, leader or local player changes, so checking it on
+ * later inputs costs a string comparison and no allocation. Every change makes a
+ * new instance, which the plugin publishes for other threads to read as a whole.
+ */
+final class SyncState {
+    static final SyncState INITIAL = new SyncState(false, 0, null, null, null, null, null, 0);
+
+    private final boolean inRaid;
+    private final int world;
+    private final String localName;
+    private final String leader;
+    private final String currentHub;
+    private final String blockedHub;
+    private final String candidateLeader;
+    private final int candidateTicks;
+    private final String targetHub;
+
+    private SyncState(boolean inRaid, int world, String localName, String leader, String currentHub, String blockedHub,
+                      String candidateLeader, int candidateTicks) {
+        this(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks,
+                deriveTargetHub(world, localName, leader));
+    }
+
+    private SyncState(boolean inRaid, int world, String localName, String leader, String currentHub, String blockedHub,
+                      String candidateLeader, int candidateTicks, String targetHub) {
+        this.inRaid = inRaid;
+        this.world = world;
+        this.localName = localName;
+        this.leader = leader;
+        this.currentHub = currentHub;
+        this.blockedHub = blockedHub;
+        this.candidateLeader = candidateLeader;
+        this.candidateTicks = candidateTicks;
+        this.targetHub = targetHub;
+    }
+
+    private static String deriveTargetHub(int world, String localName, String leader) {
+        // Without a leader on the HUD yet, fall back to the local player (solo or still loading)
+        String leaderName = leader != null ? leader : localName;
+        return world > 0 && leaderName != null ? SyncHubName.format(world, leaderName) : null;
+    }
+
+    /**
+     * Whether the raid varbits say we are in a raid team
+     */
+    boolean isInRaid() {
+        return inRaid;
+    }
+
+    int getWorld() {
+        return world;
+    }
+
+    String getLocalName() {
+        return localName;
+    }
+
+    /**
+     * The raid team leader from the HUD, or null if not known yet
+     */
+    String getLeader() {
+        return leader;
+    }
+
+    /**
+     * The party hub we are in or are joining, or null
+     */
+    String getCurrentHub() {
+        return currentHub;
+    }
+
+    /**
+     * The target hub we already told the player we won't join because they are in a non-sync hub
+     */
+    String getBlockedHub() {
+        return blockedHub;
+    }
+
+    /**
+     * A new leader seen on the HUD that has not been stable for long enough to switch hubs, or null
+     */
+    String getCandidateLeader() {
+        return candidateLeader;
+    }
+
+    /**
+     * Ticks the candidate leader has been on the HUD without interruption
+     */
+    int getCandidateTicks() {
+        return candidateTicks;
+    }
+
+    /**
+     * The [World][LEADER] hub for the current team, or null if world or leader are unknown
+     */
+    String getTargetHub() {
+        return targetHub;
+    }
+
+    /**
+     * Whether we are already in (or joining) the target hub
+     */
+    boolean isInTargetHub() {
+        return currentHub != null && currentHub.equalsIgnoreCase(targetHub);
+    }
+
+    SyncState withInRaid(boolean inRaid) {
+        return inRaid == this.inRaid ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks,
+                targetHub);
+    }
+
+    SyncState withWorld(int world) {
+        return world == this.world ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks);
+    }
+
+    SyncState withLocalName(String localName) {
+        return same(localName, this.localName) ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks);
+    }
+
+    SyncState withLeader(String leader) {
+        return same(leader, this.leader) ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks);
+    }
+
+    SyncState withCurrentHub(String currentHub) {
+        return same(currentHub, this.currentHub) ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks,
+                targetHub);
+    }
+
+    SyncState withBlockedHub(String blockedHub) {
+        return same(blockedHub, this.blockedHub) ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks,
+                targetHub);
+    }
+
+    SyncState withCandidate(String candidateLeader, int candidateTicks) {
+        return same(candidateLeader, this.candidateLeader) && candidateTicks == this.candidateTicks ? this
+                : new SyncState(inRaid, world, localName, leader, currentHub, blockedHub, candidateLeader, candidateTicks,
+                targetHub);
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncState{inRaid=" + inRaid
+                + ", world=" + world
+                + ", localName=" + localName
+                + ", leader=" + leader
+                + ", currentHub=" + currentHub
+                + ", targetHub=" + targetHub
+                + ", blockedHub=" + blockedHub
+                + ", candidateLeader=" + candidateLeader
+                + ", candidateTicks=" + candidateTicks
+                + '}';
+    }
+}
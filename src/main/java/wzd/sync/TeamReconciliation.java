@@ -0,0 +1,226 @@
+package wzd.sync;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+import net.runelite.client.util.Text;
+
+/**
+ * Who is on the raid team (the HUD roster) against who is in the party hub, indexed by
+ * normalised player name. Both sides are updated one change at a time, from roster changes
+ * and from party members joining, leaving or getting their name, and every change moves
+ * at most one name in or out of the two differences: teammates missing from the hub and
+ * hub members who are not on the team. Reading a difference is a view, never a rescan.
+ * <p>
+ * Party members are tracked by member id, since their display name arrives after they join.
+ * Client thread only.
+ */
+final class TeamReconciliation implements TeamRoster.Listener {
+    private static final class Entry {
+        private final String key;
+        private final String name;
+        private boolean onRoster;
+        private int partyMembers;
+
+        Entry(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Member id to normalised name, null until the member's name is known
+    private final Map<Long, String> memberKeys = new HashMap<>();
+    private final Set<Long> unnamed = new HashSet<>();
+
+    private final Map<String, String> missingFromParty = new LinkedHashMap<>();
+    private final Map<String, String> notOnRoster = new LinkedHashMap<>();
+
+    @Override
+    public void onRosterChange(TeamRoster.Change change, int slot, int otherSlot, String name) {
+        switch (change) {
+            case JOINED:
+                rosterJoined(name);
+                break;
+            case LEFT:
+                rosterLeft(name);
+                break;
+            case MOVED:
+                // Same team, only the order changed
+                break;
+        }
+    }
+
+    void rosterJoined(String name) {
+        String key = normalise(name);
+        if (key != null) {
+            Entry entry = entry(key, name);
+            entry.onRoster = true;
+            reconcile(entry);
+        }
+    }
+
+    void rosterLeft(String name) {
+        Entry entry = entries.get(normalise(name));
+        if (entry != null) {
+            entry.onRoster = false;
+            reconcile(entry);
+        }
+    }
+
+    /**
+     * A party member joined, with their display name if it is known yet
+     */
+    void memberJoined(long memberId, String displayName) {
+        if (!memberKeys.containsKey(memberId)) {
+            memberKeys.put(memberId, null);
+            unnamed.add(memberId);
+        }
+        memberNamed(memberId, displayName);
+    }
+
+    /**
+     * A party member's display name became known or changed; null or blank keeps the old one
+     */
+    void memberNamed(long memberId, String displayName) {
+        String key = normalise(displayName);
+        if (key == null || !memberKeys.containsKey(memberId)) {
+            return;
+        }
+
+        String previous = memberKeys.put(memberId, key);
+        if (key.equals(previous)) {
+            return;
+        }
+
+        unnamed.remove(memberId);
+        removeMember(previous);
+        Entry entry = entry(key, displayName);
+        entry.partyMembers++;
+        reconcile(entry);
+    }
+
+    void memberLeft(long memberId) {
+        unnamed.remove(memberId);
+        removeMember(memberKeys.remove(memberId));
+    }
+
+    /**
+     * Look up the names of members that joined without one, using the given member id to
+     * display name lookup. Only touches the unnamed members.
+     */
+    void resolveNames(LongFunction<String> displayNames) {
+        if (unnamed.isEmpty()) {
+            return;
+        }
+
+        for (Long memberId : unnamed.toArray(new Long[0])) {
+            memberNamed(memberId, displayNames.apply(memberId));
+        }
+    }
+
+    /**
+     * Forget the party side, when we left the party or moved to another one
+     */
+    void clearParty() {
+        for (String key : memberKeys.values()) {
+            removeMember(key);
+        }
+        memberKeys.clear();
+        unnamed.clear();
+    }
+
+    void clear() {
+        entries.clear();
+        memberKeys.clear();
+        unnamed.clear();
+        missingFromParty.clear();
+        notOnRoster.clear();
+    }
+
+    /**
+     * Teammates on the HUD that are not in the party hub
+     */
+    Collection<String> getMissingFromParty() {
+        return Collections.unmodifiableCollection(missingFromParty.values());
+    }
+
+    /**
+     * Party hub members that are not on the team, such as players left over from an earlier raid
+     */
+    Collection<String> getNotOnRoster() {
+        return Collections.unmodifiableCollection(notOnRoster.values());
+    }
+
+    int getUnnamedMembers() {
+        return unnamed.size();
+    }
+
+    boolean isReconciled() {
+        return missingFromParty.isEmpty() && notOnRoster.isEmpty() && unnamed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TeamReconciliation{missingFromParty=" + missingFromParty.values() +
+                ", notOnRoster=" + notOnRoster.values() + ", unnamedMembers=" + unnamed.size() + '}';
+    }
+
+    /**
+     * Same rules as the client's own name comparisons: tags and case don't count, and
+     * non-breaking spaces, underscores and hyphens all count as a space
+     */
+    static String normalise(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String key = Text.toJagexName(Text.removeTags(name)).toLowerCase();
+        return key.isEmpty() ? null : key;
+    }
+
+    private Entry entry(String key, String name) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, name);
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void removeMember(String key) {
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry != null) {
+            entry.partyMembers--;
+            reconcile(entry);
+        }
+    }
+
+    /**
+     * Put the entry in the difference it belongs to, if any, and drop it once neither side has it
+     */
+    private void reconcile(Entry entry) {
+        boolean inParty = entry.partyMembers > 0;
+        if (entry.onRoster && !inParty) {
+            missingFromParty.put(entry.key, entry.name);
+        } else {
+            missingFromParty.remove(entry.key);
+        }
+
+        if (inParty && !entry.onRoster) {
+            notOnRoster.put(entry.key, entry.name);
+        } else {
+            notOnRoster.remove(entry.key);
+        }
+
+        if (!inParty && !entry.onRoster) {
+            entries.remove(entry.key);
+        }
+    }
+}
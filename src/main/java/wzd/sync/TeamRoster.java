@@ -0,0 +1,126 @@
+package wzd.sync;
+
+/**
+ * The team as of the last HUD change: five name slots plus an occupancy bitmask
+ * (bit n set when slot n holds a player). Each update is diffed against the previous
+ * roster and reported per player as a join, a leave or a move to another slot, so
+ * callers only react to the slots that changed. Client thread only.
+ */
+final class TeamRoster {
+    enum Change {
+        JOINED,
+        LEFT,
+        MOVED,
+    }
+
+    interface Listener {
+        /**
+         * @param slot the player's slot, or the slot they left
+         * @param otherSlot for MOVED the slot they came from, otherwise -1
+         */
+        void onRosterChange(Change change, int slot, int otherSlot, String name);
+    }
+
+    static final int LEADER_SLOT_MASK = 1;
+
+    private static final int SLOTS = TobHudNames.SLOTS;
+
+    private String[] names = new String[SLOTS];
+    private String[] previousNames = new String[SLOTS];
+    private int occupancy;
+
+    /**
+     * Take over the slots of freshly scanned HUD names
+     *
+     * @return bitmask of the slots whose player changed, 0 if the team is the same
+     */
+    int update(TobHudNames hud, Listener listener) {
+        String[] previous = names;
+        String[] next = previousNames;
+
+        int nextOccupancy = 0;
+        int changed = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            String name = hud.getName(slot);
+            next[slot] = name;
+            if (name != null) {
+                nextOccupancy |= 1 << slot;
+            }
+            if (name == null ? previous[slot] != null : !name.equals(previous[slot])) {
+                changed |= 1 << slot;
+            }
+        }
+
+        names = next;
+        previousNames = previous;
+        occupancy = nextOccupancy;
+
+        if (changed != 0 && listener != null) {
+            report(previous, next, changed, listener);
+        }
+        return changed;
+    }
+
+    void clear() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            names[slot] = null;
+            previousNames[slot] = null;
+        }
+        occupancy = 0;
+    }
+
+    String getName(int slot) {
+        return names[slot];
+    }
+
+    int getOccupancy() {
+        return occupancy;
+    }
+
+    int size() {
+        return Integer.bitCount(occupancy);
+    }
+
+    boolean isOccupied(int slot) {
+        return (occupancy & 1 << slot) != 0;
+    }
+
+    /**
+     * Slot of the given player, or -1 if they are not in the team
+     */
+    int indexOf(String name) {
+        return indexOf(names, name);
+    }
+
+    private static void report(String[] previous, String[] next, int changed, Listener listener) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if ((changed & 1 << slot) == 0) {
+                continue;
+            }
+
+            String left = previous[slot];
+            if (left != null && indexOf(next, left) < 0) {
+                listener.onRosterChange(Change.LEFT, slot, -1, left);
+            }
+
+            String arrived = next[slot];
+            if (arrived != null) {
+                int from = indexOf(previous, arrived);
+                if (from < 0) {
+                    listener.onRosterChange(Change.JOINED, slot, -1, arrived);
+                } else {
+                    listener.onRosterChange(Change.MOVED, slot, from, arrived);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(String[] slots, String name) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (name.equals(slots[slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package wzd.sync;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+/**
+ * Client thread cost accounting: how long each of the plugin's handlers takes, and how
+ * much they add up to per game tick, with a rolling p99 and max over the last
+ * {@link #WINDOW} samples.
+ * <p>
+ * With a budget set, a tick whose handlers went over it marks the next tick as over
+ * budget, and non-essential work (chat messages, info logging, the safety net poll) is
+ * deferred until a tick that is back under budget. Client thread only, except for the
+ * getters the overlay reads.
+ */
+@Singleton
+class TickProfiler {
+    enum Handler {
+        GAME_TICK("Tick"),
+        VARBIT_CHANGED("Varbit"),
+        GAME_STATE_CHANGED("State"),
+        WIDGET("Widget"),
+        SCRIPT_POST_FIRED("Script"),
+        INVOKE("Invoke");
+
+        private final String label;
+
+        Handler(String label) {
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    static final int WINDOW = 128;
+
+    // Deferred work beyond this is dropped, oldest first, rather than piling up
+    private static final int MAX_DEFERRED = 32;
+
+    private final Map<Handler, RollingStats> handlers = new EnumMap<>(Handler.class);
+    private final RollingStats ticks = new RollingStats(WINDOW);
+    private final ArrayDeque<Runnable> deferred = new ArrayDeque<>(MAX_DEFERRED);
+
+    private long budgetNanos;
+    private long tickNanos;
+    private boolean overBudget;
+    private long overBudgetTicks;
+
+    TickProfiler() {
+        for (Handler handler : Handler.values()) {
+            handlers.put(handler, new RollingStats(WINDOW));
+        }
+    }
+
+    /**
+     * @param budgetNanos per tick handler time above which non-essential work is deferred, 0 for no budget
+     */
+    void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Close the previous tick's accounting and run deferred work if it stayed within budget
+     */
+    void startTick() {
+        ticks.record(tickNanos);
+        overBudget = budgetNanos > 0 && tickNanos > budgetNanos;
+        tickNanos = 0;
+
+        if (overBudget) {
+            overBudgetTicks++;
+            return;
+        }
+
+        Runnable work;
+        while ((work = deferred.poll()) != null) {
+            work.run();
+        }
+    }
+
+    /**
+     * Account a handler that started at the given System.nanoTime()
+     */
+    void record(Handler handler, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        handlers.get(handler).record(elapsed);
+        tickNanos += elapsed;
+    }
+
+    /**
+     * Whether the last tick went over budget, so non-essential work should wait
+     */
+    boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Run non-essential work now, or on the next tick within budget
+     */
+    void runWhenIdle(Runnable work) {
+        if (!overBudget) {
+            work.run();
+            return;
+        }
+
+        if (deferred.size() >= MAX_DEFERRED) {
+            deferred.poll();
+        }
+        deferred.add(work);
+    }
+
+    RollingStats get(Handler handler) {
+        return handlers.get(handler);
+    }
+
+    RollingStats getTicks() {
+        return ticks;
+    }
+
+    long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+
+    void reset() {
+        for (RollingStats stats : handlers.values()) {
+            stats.reset();
+        }
+        ticks.reset();
+        deferred.clear();
+        tickNanos = 0;
+        overBudget = false;
+        overBudgetTicks = 0;
+    }
+}
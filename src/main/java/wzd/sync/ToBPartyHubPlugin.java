@@ -2,29 +2,41 @@ package wzd.sync;
 
 import com.google.inject.Provides;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
 import javax.inject.Inject;
 
 import lombok.extern.slf4j.Slf4j;
 
 import net.runelite.api.Client;
 import net.runelite.api.Player;
+import net.runelite.api.events.CommandExecuted;
 import net.runelite.api.events.GameStateChanged;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPostFired;
 import net.runelite.api.events.VarbitChanged;
-import net.runelite.api.gameval.InterfaceID;
+import net.runelite.api.events.WidgetClosed;
+import net.runelite.api.events.WidgetLoaded;
 
 import net.runelite.api.GameState;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.RuneLite;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.config.ConfigManager;
-import net.runelite.client.party.PartyService;
+import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.PartyChanged;
+import net.runelite.client.party.WSClient;
+import net.runelite.client.party.messages.UserJoin;
+import net.runelite.client.party.messages.UserPart;
+import net.runelite.client.ui.overlay.OverlayManager;
 
 import net.runelite.client.callback.ClientThread;
-import net.runelite.client.chat.ChatMessageBuilder;
-import net.runelite.client.chat.ChatMessageManager;
-import net.runelite.client.chat.QueuedMessage;
-import net.runelite.client.chat.ChatColorType;
 import net.runelite.api.widgets.Widget;
 
 @Slf4j
@@ -34,14 +46,28 @@ import net.runelite.api.widgets.Widget;
         tags = {"tob", "party", "partyhub", "automation", "theatre of blood"}
 )
 public class ToBPartyHubPlugin extends Plugin {
-    private static final int TOB_VARBIT = 6440; // Generic ToB-related varbit
-    private static final int PARTY_VARBIT = 6441; // Party-related varbit
+    // HUD changes are picked up from widget/script events; this is only a safety net
+    private static final int SAFETY_NET_POLL_TICKS = 100;
+
+    // Leave a hub joined from the party finder if the raid hasn't started this long after
+    private static final int PREDICTION_TIMEOUT_TICKS = 500;
+
+    // A session journaled longer ago than this is not resumed after a restart
+    private static final long RESUME_WINDOW_MS = 5 * 60 * 1000;
+    private static final File JOURNAL_FILE = new File(new File(RuneLite.RUNELITE_DIR, "tob-party-sync"), "session.journal");
+    private static final File RECORDINGS_DIR = new File(new File(RuneLite.RUNELITE_DIR, "tob-party-sync"), "recordings");
+
+    private static final String TRACE_COMMAND = "tobsynctrace";
+    private static final String CONFIG_GROUP = "tobpartyhub";
 
     @Inject
     private Client client;
 
     @Inject
-    private PartyService partyService;
+    private PartyLink party;
+
+    @Inject
+    private WSClient wsClient;
 
     @Inject
     private ToBPartyHubPluginConfig config;
@@ -50,19 +76,64 @@ public class ToBPartyHubPlugin extends Plugin {
     private ClientThread clientThread;
 
     @Inject
-    private ChatMessageManager chatMessageManager;
+    private SyncNotifications notifications;
+
+    @Inject
+    private PartyTransitionExecutor partyTransitions;
+
+    @Inject
+    private FlightRecorder recorder;
 
-    private String currentGroupName;
-    private boolean isInToB = false;
-    private int lastToBState = -1;
-    private int lastPartyState = -1;
-    private String detectedPartyLeader;
-    private long lastPartyCheck = 0;
-    private String previousPartyLeader;
-    private boolean waitingForToBHudUpdate = false;
+    @Inject
+    private SyncLatency latency;
+
+    @Inject
+    private TickProfiler profiler;
+
+    @Inject
+    private OverlayManager overlayManager;
+
+    @Inject
+    private SyncLatencyOverlay latencyOverlay;
+
+    @Inject
+    private SyncNotificationOverlay notificationOverlay;
+
+    private boolean reconnecting = false;
+    private final RaidDetector raid = RaidDetector.theatreOfBlood();
 
     private int tickCounter = 0;
-    private boolean isTeamRefresh = false;
+
+    private boolean hudNamesDirty = false;
+    private final TobHudNames hudNames = new TobHudNames();
+    private final TeamRoster roster = new TeamRoster();
+    private final TeamRoster.Listener rosterChanges = this::recordRosterChange;
+    private final TeamReconciliation reconciliation = new TeamReconciliation();
+    private final LongFunction<String> memberNames = this::memberDisplayName;
+    // The roster widget stays the same object while its interface is loaded, so it is only
+    // looked up again after the interface (re)loads or closes, in or out of the raid, or the
+    // game state changes
+    private Widget rosterWidget;
+
+    private boolean partyFinderOpen = false;
+    private final TobHudNames partyFinderMembers = new TobHudNames();
+    private String partyFinderApplicants;
+    private int predictionTick = -1;
+
+    // When the varbit flip or HUD change that may lead to the next join was seen, 0 if none pending
+    private long signalNanos;
+
+    // Written on the client thread, read by overlays while rendering
+    private volatile ConfigSnapshot settings;
+    private volatile PartySyncReducer reducer = new PartySyncReducer(SyncSettings.DEFAULTS);
+    // Replaced, never mutated, after every change, so any thread can read a consistent state
+    private final AtomicReference<SyncState> state = new AtomicReference<>(SyncState.INITIAL);
+    private final List<SyncEffect> effects = new ArrayList<>();
+
+    private final SessionJournal journal = new SessionJournal(JOURNAL_FILE);
+    private SessionJournal.Entry resumeEntry;
+
+    private final SessionRecorder sessionRecorder = new SessionRecorder();
 
     @Provides
     ToBPartyHubPluginConfig provideConfig(ConfigManager configManager) {
@@ -72,462 +143,747 @@ public class ToBPartyHubPlugin extends Plugin {
     @Override
     protected void startUp() throws Exception {
         log.info("ToB Party Sync plugin started");
-        currentGroupName = null;
-        isInToB = false;
-        lastToBState = -1;
-        lastPartyState = -1;
+        overlayManager.add(latencyOverlay);
+        overlayManager.add(notificationOverlay);
+        wsClient.registerMessage(HubAnnouncement.class);
+
+        // The rest is client thread state, set up there as shutDown tears it down there, so
+        // a quick restart runs after the last shutdown rather than alongside it
+        invokeProfiled(() -> {
+            recorder.clear();
+            latency.reset();
+            profiler.reset();
+            resetSync();
+            updateRecording();
+            partyTransitions.start();
+
+            // Whatever the last session left behind, used if we turn out to still be in that raid
+            resumeEntry = journal.open();
+            if (resumeEntry != null && resumeEntry.getHub() != null) {
+                log.debug("Previous session journaled {}", resumeEntry);
+            }
 
-        clientThread.invoke(this::checkToBStatus);
+            // Pick up a hub we were already in, so the non-sync hub check and shutdown see it
+            state.set(state.get().withCurrentHub(party.getPassphrase()));
+
+            seedRaid();
+            seedPartyMembers();
+            if (raid.isInRaid()) {
+                // Enabled while already in a team, join straight away
+                syncRoster();
+                resumeFromJournal();
+                dispatch(SyncInput.RAID_ENTERED);
+                dropUnusedSignal();
+            }
+        });
     }
 
     @Override
     protected void shutDown() throws Exception {
         log.info("ToB Party Sync plugin stopped");
-        if (currentGroupName != null && isSyncPartyHub(currentGroupName)) {
-            leaveCurrentGroup();
+        // The final leave, the profiler's deferred work, the journal and the recorder are all
+        // client thread only. Callbacks queued before now may still run after this and find
+        // the journal and recorder closed, which they leave alone
+        clientThread.invoke(() -> {
+            dispatch(SyncInput.SHUTDOWN);
+            journal.close();
+            sessionRecorder.stop();
+            // Last, once the final leave is queued
+            partyTransitions.stop();
+        });
+        wsClient.unregisterMessage(HubAnnouncement.class);
+        overlayManager.remove(latencyOverlay);
+        overlayManager.remove(notificationOverlay);
+    }
+
+    /**
+     * Start from a clean sync state with the current settings
+     */
+    void resetSync() {
+        settings = ConfigSnapshot.of(config);
+        reducer = new PartySyncReducer(settings.getSync());
+        profiler.setBudgetNanos(settings.getTickBudgetNanos());
+        configureNotifications();
+        notifications.clear();
+        state.set(SyncState.INITIAL);
+        effects.clear();
+        tickCounter = 0;
+        reconnecting = false;
+        hudNamesDirty = false;
+        hudNames.update(null);
+        roster.clear();
+        reconciliation.clear();
+        rosterWidget = null;
+        partyFinderOpen = false;
+        partyFinderMembers.update(null);
+        partyFinderApplicants = null;
+        predictionTick = -1;
+        signalNanos = 0;
+    }
+
+    /**
+     * The one client read of the raid varbits; from here on they come from VarbitChanged
+     */
+    private void seedRaid() {
+        raid.seed(client.getVarbitValue(raid.getRaidVarbit()), client.getVarbitValue(raid.getPartyVarbit()));
+    }
+
+    @Subscribe
+    public void onConfigChanged(ConfigChanged event) {
+        if (CONFIG_GROUP.equals(event.getGroup())) {
+            invokeProfiled(() -> {
+                // The one place settings are read from the config, everything else uses the snapshot
+                settings = ConfigSnapshot.of(config);
+                reducer = new PartySyncReducer(settings.getSync());
+                profiler.setBudgetNanos(settings.getTickBudgetNanos());
+                configureNotifications();
+                updateRecording();
+            });
         }
     }
 
     /**
-     * Monitor varbit changes to detect ToB party changes
+     * React to ToB HUD name changes flagged by widget/script events, falling back to
+     * a low-frequency poll in case an event was missed
      */
     @Subscribe
     public void onGameTick(GameTick event) {
-        // Only run the party leader check loop while in ToB
-        if (!isInToB) {
+        profiler.startTick();
+        final long start = System.nanoTime();
+        try {
+            // Messages of the last ticks, held back while the client thread is busy
+            notifications.onTick(!profiler.isOverBudget());
+            gameTick(event);
+        } finally {
+            // After the tick, so HUD texts read while handling it come first in the recording
+            sessionRecorder.tick();
+            profiler.record(TickProfiler.Handler.GAME_TICK, start);
+        }
+    }
+
+    private void gameTick(GameTick event) {
+        // Only run the party leader check while in ToB
+        if (!raid.isInRaid()) {
             tickCounter = 0; // Reset when not in ToB
+            hudNamesDirty = false;
+            if (reducer.getSettings().isPredictiveJoin()) {
+                checkPartyFinder();
+            }
             return;
         }
 
+        predictionTick = -1;
+
+        dispatch(SyncInput.TICK);
         tickCounter++;
 
-        if (tickCounter >= 27 && tickCounter < 30) {
-            int ticksLeft = 30 - tickCounter;
-            log.info("Checking party change in {} ticks", ticksLeft);
+        // Party members whose name only arrives after they joined the hub, looked up every
+        // tick until they all have one
+        if (reconciliation.getUnnamedMembers() > 0) {
+            reconciliation.resolveNames(memberNames);
+        }
+
+        if (hudNamesDirty) {
+            hudNamesDirty = false;
+            if (syncRoster()) {
+                tickCounter = 0;
+                dropUnusedSignal();
+                return;
+            }
         }
 
-        if (tickCounter >= 30) {
+        // The safety net can wait for a tick with time to spare
+        if (tickCounter >= SAFETY_NET_POLL_TICKS && !profiler.isOverBudget()) {
             tickCounter = 0;
+            trace("safety net check", null);
+            handleToBPartyChange();
+        }
+    }
+
+    @Subscribe
+    public void onWidgetLoaded(WidgetLoaded event) {
+        final long start = System.nanoTime();
+        try {
+            widgetLoaded(event);
+        } finally {
+            profiler.record(TickProfiler.Handler.WIDGET, start);
+        }
+    }
+
+    private void widgetLoaded(WidgetLoaded event) {
+        // Whether or not the varbits say we are in the raid yet: the HUD can load before them,
+        // and a stale widget must not be kept once they do
+        if (event.getGroupId() == raid.getRosterGroupId()) {
+            rosterWidget = null;
+            hudNamesDirty = true;
+        } else if (event.getGroupId() == TobPartyFinder.GROUP_ID) {
+            partyFinderOpen = true;
+        }
+    }
+
+    @Subscribe
+    public void onWidgetClosed(WidgetClosed event) {
+        final long start = System.nanoTime();
+        try {
+            widgetClosed(event);
+        } finally {
+            profiler.record(TickProfiler.Handler.WIDGET, start);
+        }
+    }
+
+    private void widgetClosed(WidgetClosed event) {
+        if (event.getGroupId() == raid.getRosterGroupId()) {
+            rosterWidget = null;
+        } else if (event.getGroupId() == TobPartyFinder.GROUP_ID) {
+            partyFinderOpen = false;
+        }
+    }
 
-            log.info("=== 30-TICK PARTY LEADER CHECK ===");
-            String result = getCurrentPartyId(true);
-
-            if (result != null && result.startsWith("LEADER_CHANGED:")) {
-                String newLeaderName = result.substring("LEADER_CHANGED:".length());
-                log.info("Leader change detected via tick loop - everyone should join new party hub for: {}", newLeaderName);
-                handleToBPartyChange();
-            } else if (result != null) {
-                log.info("Party leader check complete - leader '{}' unchanged, no action needed", result);
-                // Don't call handleToBPartyChange() when leader hasn't changed
-            } else {
-                log.info("No party leader detected in tick loop (ToB HUD empty or not ready)");
+    /**
+     * Predictive join: while the party finder is open, follow the leader of a team the local
+     * player applied to or was accepted into. Gives up on the prediction if no raid follows.
+     */
+    private void checkPartyFinder() {
+        if (partyFinderOpen) {
+            Widget members = client.getWidget(TobPartyFinder.MEMBERS);
+            Widget applicants = client.getWidget(TobPartyFinder.APPLICANTS);
+            String membersText = members != null && !members.isHidden() ? members.getText() : null;
+            String applicantsText = applicants != null && !applicants.isHidden() ? applicants.getText() : null;
+
+            boolean membersChanged = partyFinderMembers.update(membersText);
+            if (membersChanged || !Objects.equals(applicantsText, partyFinderApplicants)) {
+                partyFinderApplicants = applicantsText;
+
+                Player localPlayer = client.getLocalPlayer();
+                String localName = localPlayer != null ? localPlayer.getName() : null;
+                String leader = partyFinderMembers.getLeader();
+
+                if (leader != null && localName != null
+                        && (TobHudNames.containsName(membersText, localName)
+                        || TobHudNames.containsName(applicantsText, localName))) {
+                    syncRoster();
+                    trace("party finder leader", leader);
+                    predictionTick = client.getTickCount();
+                    dispatch(SyncInput.predictedLeader(leader));
+                    dropUnusedSignal();
+                }
             }
         }
+
+        if (predictionTick >= 0 && client.getTickCount() - predictionTick > PREDICTION_TIMEOUT_TICKS) {
+            predictionTick = -1;
+            dispatch(SyncInput.PREDICTION_EXPIRED);
+        }
+    }
+
+    @Subscribe
+    public void onScriptPostFired(ScriptPostFired event) {
+        // Fires for every client script, many times a frame. Outside a raid, or with the HUD
+        // already flagged for this tick, there is nothing to do and nothing worth timing
+        if (!raid.isInRaid() || hudNamesDirty) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            scriptPostFired(event);
+        } finally {
+            profiler.record(TickProfiler.Handler.SCRIPT_POST_FIRED, start);
+        }
+    }
+
+    private void scriptPostFired(ScriptPostFired event) {
+        // Not just the scripts redrawing the raid HUD end up here. Only a script that left a
+        // new names text behind flags the HUD; the text is compared by identity here and by
+        // contents once on the next tick
+        if (readHudNamesText() != hudNames.getText()) {
+            hudNamesDirty = true;
+        }
     }
 
     @Subscribe
     public void onVarbitChanged(VarbitChanged event) {
-        // Check if ToB or party-related varbits changed
-        if (event.getVarbitId() == TOB_VARBIT || event.getVarbitId() == PARTY_VARBIT) {
-            boolean wasInToB = isInToB;
-            checkToBStatus();
-
-            // If we just entered ToB or party state changed
-            if (isInToB && (!wasInToB || hasPartyStateChanged())) {
-                log.debug("ToB party change detected via varbit {}", event.getVarbitId());
-
-                // Mark that we're waiting for ToB HUD to update
-                waitingForToBHudUpdate = true;
-                lastPartyCheck = System.currentTimeMillis();
-
-                // Start monitoring the ToB HUD interface AND immediately check for party hub
-                log.info("Started ToB party monitoring - checking immediately + every 30 ticks");
-
-                // Immediate check for instant party hub join
-                clientThread.invokeLater(() -> {
-                    log.info("Immediate party check after ToB entry");
-                    handleToBPartyChange();
-                });
-            } else if (!isInToB && wasInToB) {
-                // Left ToB - handle leaving based on party type and settings
-                log.debug("Left ToB");
-
-                if (config.autoLeaveWhenExitingToB() && currentGroupName != null) {
-                    if (isSyncPartyHub(currentGroupName)) {
-                        // Always leave sync party hubs when exiting ToB
-                        log.info("Leaving sync party hub '{}' after exiting ToB", currentGroupName);
-                        leaveCurrentGroup();
-                    } else {
-                        // Non-sync party hub - only leave if force join is enabled
-                        if (config.forceJoinMode()) {
-                            log.info("Leaving non-sync party hub '{}' after exiting ToB (force join enabled)", currentGroupName);
-                            leaveCurrentGroup();
-                        } else {
-                            log.info("Staying in non-sync party hub '{}' after exiting ToB (force join disabled)", currentGroupName);
-                        }
-                    }
-                }
+        final long start = System.nanoTime();
+        try {
+            varbitChanged(event);
+        } finally {
+            profiler.record(TickProfiler.Handler.VARBIT_CHANGED, start);
+        }
+    }
 
-                // Clear cached party leader when leaving ToB
-                detectedPartyLeader = null;
-                lastPartyCheck = 0;
-            }
+    private void varbitChanged(VarbitChanged event) {
+        // The payload carries the new value, the detector knows the old one
+        final int varbitId = event.getVarbitId();
+        final int value = event.getValue();
+        if (sessionRecorder.isRecording() && raid.isTracked(varbitId)) {
+            sessionRecorder.varbit(varbitId, value);
         }
 
-        // Handle any party-related varbit changes while in ToB
-        if (isInToB && event.getVarbitId() == PARTY_VARBIT) {
-            log.info("VarbitChanged: Party varbit changed while in ToB - checking for immediate update");
-            clientThread.invokeLater(() -> {
-                log.info("Party varbit change - immediate party check");
-                handleToBPartyChange();
-            });
+        RaidVarbits.Transition transition = raid.onVarbitChanged(varbitId, value);
+        if (transition == RaidVarbits.Transition.NONE) {
+            return;
+        }
+
+        recorder.record(FlightRecorder.Type.VARBIT, client.getTickCount(), varbitId, value);
+        signalNanos = System.nanoTime();
+
+        switch (transition) {
+            case ENTERED:
+            case PARTY_CHANGED:
+                // Check once the HUD had a chance to update, for an instant party hub join
+                hudNamesDirty = true;
+                dispatchLater(transition == RaidVarbits.Transition.ENTERED
+                        ? SyncInput.RAID_ENTERED : SyncInput.PARTY_CHANGED);
+                break;
+            case LEFT:
+                // The reducer decides whether to leave based on party type and settings
+                dispatch(SyncInput.RAID_LEFT);
+                forgetRoster();
+                dropUnusedSignal();
+                break;
         }
     }
 
     @Subscribe
     public void onGameStateChanged(GameStateChanged event) {
-        if (event.getGameState() == GameState.LOGIN_SCREEN ||
-                event.getGameState() == GameState.HOPPING) {
-            // Reset state on logout/world hop
-            lastToBState = -1;
-            lastPartyState = -1;
-            currentGroupName = null;
+        final long start = System.nanoTime();
+        try {
+            gameStateChanged(event);
+        } finally {
+            profiler.record(TickProfiler.Handler.GAME_STATE_CHANGED, start);
         }
     }
 
-    private void sendGameMessage(String message) {
-        if (!config.enableChatMessages()) {
-            return;
+    private void gameStateChanged(GameStateChanged event) {
+        final GameState gameState = event.getGameState();
+        sessionRecorder.gameState(gameState);
+        // Interfaces are rebuilt on login and loading, don't read a widget of the old ones
+        rosterWidget = null;
+        // A connection blip only counts as a reconnect when the hub is kept over it; otherwise
+        // it would clear the hub and rejoin it moments later
+        if (gameState == GameState.LOGIN_SCREEN || gameState == GameState.HOPPING
+                || gameState == GameState.CONNECTION_LOST && reducer.getSettings().isResumeAcrossReconnects()) {
+            // Whether the hub is kept over the reconnect is up to the reducer's settings
+            dispatch(SyncInput.LOGGED_OUT);
+            // A pending leader change was dropped with it
+            dropUnusedSignal();
+            reconnecting = true;
+        } else if (gameState == GameState.LOGGED_IN && reconnecting) {
+            reconnecting = false;
+            // Back in game: re-derive the hub only if the world or the team changed meanwhile
+            hudNamesDirty = true;
+            dispatchLater(SyncInput.CHECK);
         }
+    }
+
+    @Subscribe
+    public void onPartyChanged(PartyChanged event) {
+        // Posted from whichever thread changed the party, which is usually the transition executor
+        final String passphrase = event.getPassphrase();
+        invokeProfiled(() -> {
+            // A new party, its members are announced again as they join
+            reconciliation.clearParty();
+            seedPartyMembers();
+            dispatch(SyncInput.partyHub(passphrase));
+        });
+    }
 
-        final String formattedMessage = new ChatMessageBuilder()
-                .append(ChatColorType.HIGHLIGHT)
-                .append(message)
-                .append(".")
-                .build();
+    @Subscribe
+    public void onUserJoin(UserJoin event) {
+        final long memberId = event.getMemberId();
+        invokeProfiled(() -> reconciliation.memberJoined(memberId, memberDisplayName(memberId)));
+    }
 
-        chatMessageManager.queue(QueuedMessage.builder()
-                .type(net.runelite.api.ChatMessageType.CONSOLE)
-                .runeLiteFormattedMessage(formattedMessage)
-                .build());
+    @Subscribe
+    public void onUserPart(UserPart event) {
+        final long memberId = event.getMemberId();
+        invokeProfiled(() -> reconciliation.memberLeft(memberId));
+    }
+
+    @Subscribe
+    public void onHubAnnouncement(HubAnnouncement announcement) {
+        // Party messages arrive on the websocket thread
+        invokeProfiled(() -> handleHubAnnouncement(announcement));
     }
 
     /**
-     * Check if we're currently in Theatre of Blood based on varbits
+     * Follow the team leader's announced hub straight away, if it is about our team
      */
-    private void checkToBStatus() {
-        try {
-            int tobState = client.getVarbitValue(TOB_VARBIT);
-            int partyState = client.getVarbitValue(PARTY_VARBIT);
+    private void handleHubAnnouncement(HubAnnouncement announcement) {
+        long localMemberId = party.getLocalMemberId();
+        if (!raid.isInRaid() || localMemberId == -1 || localMemberId == announcement.getMemberId()) {
+            return;
+        }
 
-            isInToB = tobState > 0 || partyState > 0;
+        syncRoster();
 
-            lastToBState = tobState;
-            lastPartyState = partyState;
+        // Order independent, so a HUD that still shows the old leader first matches too
+        if (announcement.getRosterFingerprint() != hudNames.getRosterFingerprint()) {
+            trace("announcement for another team", announcement.getHub());
+            return;
+        }
 
-            log.debug("ToB status check - TOB varbit: {}, Party varbit: {}, In ToB: {}",
-                    tobState, partyState, isInToB);
-        } catch (Exception e) {
-            log.warn("Error checking ToB status: {}", e.getMessage());
-            isInToB = false;
+        String leader = announcement.getLeader();
+        if (leader == null || !SyncHubName.format(state.get().getWorld(), leader).equalsIgnoreCase(announcement.getHub())) {
+            trace("announcement for another world", announcement.getHub());
+            return;
+        }
+
+        // Only the leader announces, so the sender has to be on our HUD and be that leader
+        if (!hudNames.hasMember(leader)) {
+            trace("announced leader not on the HUD", leader);
+            return;
+        }
+
+        String sender = party.getDisplayName(announcement.getMemberId());
+        String leaderKey = TeamReconciliation.normalise(leader);
+        if (!leaderKey.equals(TeamReconciliation.normalise(sender))) {
+            trace("announcement not from the leader", announcement.getHub());
+            return;
+        }
+
+        trace("hub announced", announcement.getHub());
+        signalNanos = System.nanoTime();
+        tickCounter = 0;
+        dispatch(SyncInput.announcedLeader(leader));
+        dropUnusedSignal();
+    }
+
+    @Subscribe
+    public void onCommandExecuted(CommandExecuted event) {
+        if (TRACE_COMMAND.equalsIgnoreCase(event.getCommand())) {
+            log.info("{}\n{}\n{}\n{}", state.get(), reconciliation, partyTransitions.getCircuitBreaker(), recorder.dump());
+            notifications.post(SyncNotice.TRACE_WRITTEN, null);
         }
     }
 
     /**
-     * Check if the party state has changed
+     * Re-check the party hub against the current ToB HUD, world and local player
      */
-    private boolean hasPartyStateChanged() {
-        try {
-            int currentToBState = client.getVarbitValue(TOB_VARBIT);
-            int currentPartyState = client.getVarbitValue(PARTY_VARBIT);
-
-            return currentToBState != lastToBState || currentPartyState != lastPartyState;
-        } catch (Exception e) {
-            log.warn("Error checking party state: {}", e.getMessage());
-            return false;
-        }
+    void handleToBPartyChange() {
+        syncRoster();
+        dispatch(SyncInput.CHECK);
+        dropUnusedSignal();
     }
 
     /**
-     * Get the party leader from the in-game party interface
+     * Feed an input to the reducer and carry out its effects. Client thread only.
      */
-    private String getPartyLeaderFromInterface() {
-        // Use the same ToB HUD detection as getCurrentPartyId()
+    void dispatch(SyncInput input) {
+        final SyncState previous = state.get();
+        final SyncState next;
+        final long started = System.nanoTime();
         try {
-            Widget tobHudNames = client.getWidget(InterfaceID.TobHud.NAMES);
-
-            if (tobHudNames != null && !tobHudNames.isHidden() && tobHudNames.getText() != null) {
-                String namesText = tobHudNames.getText().trim();
-                if (!namesText.isEmpty() && !namesText.equals("-<br>-<br>-<br>-<br>-")) {
-                    String[] playerNames = namesText.split("<br>");
-                    if (playerNames.length > 0) {
-                        String leaderName = playerNames[0].trim();
-                        if (!leaderName.isEmpty() && !leaderName.equals("-") &&
-                                leaderName.length() >= 3 && leaderName.length() <= 12) {
-                            log.info("Party leader from ToB HUD interface: '{}'", leaderName);
-                            return leaderName;
-                        }
-                    }
+            next = reducer.reduce(previous, input, effects);
+        } catch (RuntimeException e) {
+            effects.clear();
+            logError("Error handling " + input, e);
+            return;
+        }
+        state.set(next);
+
+        if (next != previous) {
+            trace(input.getKind().name(), next.getTargetHub());
+            journalSession(previous, next);
+        }
+
+        if (!effects.isEmpty()) {
+            final long decided = System.nanoTime();
+            for (SyncEffect effect : effects) {
+                if (effect.getKind() == SyncEffect.Kind.JOIN) {
+                    recordJoinTiming(started, decided);
                 }
+                apply(effect);
             }
-        } catch (Exception e) {
-            log.debug("Error getting party leader from ToB HUD: {}", e.getMessage());
+            effects.clear();
         }
+    }
 
-        log.info("No party leader found in ToB HUD interface");
-        return null;
+    /**
+     * Journal the session when the hub, leader or world changed
+     */
+    private void journalSession(SyncState previous, SyncState next) {
+        if (next.getCurrentHub() != previous.getCurrentHub() || next.getLeader() != previous.getLeader()
+                || next.getWorld() != previous.getWorld()) {
+            journal.append(next.getCurrentHub(), next.getLeader(), next.getWorld(),
+                    client.getTickCount(), System.currentTimeMillis());
+        }
     }
 
     /**
-     * Check if a party hub group name appears to be created by this sync plugin
-     * Sync party hubs follow the pattern: [World][PlayerName] (e.g., 330WISEOLDMAN, 416JOHNCENA)
+     * After a restart mid-raid, take the leader from the journal when the HUD hasn't shown
+     * one yet, so the hub is rejoined on entering instead of after the next HUD update
      */
-    private boolean isSyncPartyHub(String groupName) {
-        if (groupName == null || groupName.length() < 4) {
-            return false;
+    private void resumeFromJournal() {
+        SessionJournal.Entry entry = resumeEntry;
+        resumeEntry = null;
+        if (entry == null || state.get().getLeader() != null
+                || !entry.isResumable(client.getWorld(), System.currentTimeMillis(), RESUME_WINDOW_MS)) {
+            return;
         }
-        return groupName.matches("^\\d{3,4}[A-Z0-9]+$");
+
+        trace("resumed from journal", entry.getHub());
+        dispatch(SyncInput.roster(entry.getLeader()));
     }
 
-    private String getCurrentPartyId() {
-        return getCurrentPartyId(false);
+    /**
+     * Forget the signal of a handler whose dispatches joined nothing, so it isn't charged to a
+     * later, unrelated join. A new leader still waiting out the stabilisation window keeps it,
+     * since that join is still coming.
+     */
+    private void dropUnusedSignal() {
+        if (state.get().getCandidateLeader() == null) {
+            signalNanos = 0;
+        }
     }
 
-    private String getCurrentPartyId(boolean forceRefresh) {
-        try {
-            long currentTime = System.currentTimeMillis();
+    private void recordJoinTiming(long started, long decided) {
+        latency.record(SyncLatency.Stage.DECISION, decided - started);
+        if (signalNanos != 0) {
+            latency.record(SyncLatency.Stage.DETECTION, started - signalNanos);
+        }
+    }
 
-            // If we're waiting for ToB HUD to update but not forcing refresh, return cached
-            if (waitingForToBHudUpdate && !forceRefresh) {
-                log.debug("Waiting for ToB HUD update (use force refresh to check now)");
-                return detectedPartyLeader != null && !detectedPartyLeader.equals("-") ? detectedPartyLeader : null;
+    /**
+     * Run work on the client thread (right away if already on it), timed as an invoke callback
+     */
+    private void invokeProfiled(Runnable work) {
+        clientThread.invoke(() -> {
+            final long start = System.nanoTime();
+            try {
+                work.run();
+            } finally {
+                profiler.record(TickProfiler.Handler.INVOKE, start);
             }
+        });
+    }
 
-            // Check party leader every 10 seconds or if forced refresh
-            if (!forceRefresh && currentTime - lastPartyCheck < 10000 && detectedPartyLeader != null && !waitingForToBHudUpdate) {
-                log.debug("Using cached party leader: '{}'", detectedPartyLeader);
-                return detectedPartyLeader.equals("-") ? null : detectedPartyLeader;
+    /**
+     * Dispatch after the rest of this tick's events, once world, player and HUD are up to date
+     */
+    private void dispatchLater(SyncInput input) {
+        clientThread.invokeLater(() -> {
+            final long start = System.nanoTime();
+            try {
+                syncRoster();
+                if (input == SyncInput.RAID_ENTERED) {
+                    resumeFromJournal();
+                }
+                dispatch(input);
+                dropUnusedSignal();
+            } finally {
+                profiler.record(TickProfiler.Handler.INVOKE, start);
             }
+        });
+    }
 
-            log.info("=== PARTY DETECTION DEBUG ===");
-
-            Widget tobHudNames = client.getWidget(InterfaceID.TobHud.NAMES);
-
-            if (tobHudNames != null && !tobHudNames.isHidden() && tobHudNames.getText() != null) {
-                String namesText = tobHudNames.getText().trim();
-                log.info("ToB HUD names text: '{}'", namesText);
-
-                if (!namesText.isEmpty() && !namesText.equals("-<br>-<br>-<br>-<br>-")) {
-                    String[] playerNames = namesText.split("<br>");
-
-                    if (playerNames.length > 0) {
-                        String leaderName = playerNames[0].trim();
-
-                        // Check if leader has changed
-                        boolean leaderChanged = !leaderName.equals(detectedPartyLeader);
-
-                        // Update cache
-                        lastPartyCheck = currentTime;
-                        previousPartyLeader = detectedPartyLeader; // Store current as previous before updating
-                        detectedPartyLeader = leaderName;
-                        waitingForToBHudUpdate = false;
-
-                        if (!leaderName.isEmpty() && !leaderName.equals("-") &&
-                                leaderName.length() >= 3 && leaderName.length() <= 12) {
-                            log.info("ToB party leader detected: '{}' (changed: {})", leaderName, leaderChanged);
-
-                            // If leader changed, announce team refresh
-                            if (leaderChanged && previousPartyLeader != null && !previousPartyLeader.equals("-")) {
-                                sendGameMessage("Team refreshed - new leader: " + leaderName);
-                                log.info("Team leader changed from '{}' to '{}'", previousPartyLeader, leaderName);
-                                // Force party hub update since leader changed
-                                isTeamRefresh = true; // Mark as team refresh to suppress join/leave messages
-                                return "LEADER_CHANGED:" + leaderName;
-                            }
-
-                            // Get current world to build expected party hub name
-                            String world = String.valueOf(client.getWorld());
-                            String expectedSyncPartyHub = world + leaderName.toUpperCase();
-
-                            log.info("Expected sync party hub would be: '{}'", expectedSyncPartyHub);
-
-                            // If this raid team would create a sync party hub, allow it
-                            if (isSyncPartyHub(expectedSyncPartyHub)) {
-                                log.info("Raid team would create sync party - allowing auto-join");
-
-                                // For tick loop monitoring, still return the leader name for change detection
-                                if (forceRefresh) {
-                                    return leaderName; // Return leader for change detection
-                                }
-                                return null; // Allow sync party creation/switching for normal calls
-                            } else {
-                                // Non-sync leader name means user is probably in a custom party hub
-                                log.info("Non-sync raid leader detected - assuming user is in custom party hub");
-                                return leaderName; // Return leader name as party identifier
-                            }
-                        } else if (leaderName.equals("-")) {
-                            log.info("No party leader (empty slot)");
-                            detectedPartyLeader = "-";
-                            return null;
-                        } else {
-                            log.warn("Invalid leader name: '{}'", leaderName);
-                            return null;
-                        }
-                    } else {
-                        log.warn("No player names found in ToB HUD text");
+    private void apply(SyncEffect effect) {
+        final String groupName = effect.getText();
+        final boolean quiet = effect.isQuiet();
+
+        switch (effect.getKind()) {
+            case JOIN:
+                profiler.runWhenIdle(() -> log.info("Creating new Party group: {}", groupName));
+                recorder.record(FlightRecorder.Type.JOIN, client.getTickCount(), groupName);
+                final long signal = signalNanos;
+                signalNanos = 0;
+                announceHub(groupName);
+                partyTransitions.join(groupName, () -> {
+                    log.info("Successfully joined Party group: {}", groupName);
+                    if (signal != 0) {
+                        latency.record(SyncLatency.Stage.END_TO_END, System.nanoTime() - signal);
                     }
-                } else {
-                    log.info("ToB HUD shows empty team or still loading");
-                    // Don't update cache if still loading
-                    return detectedPartyLeader != null && !detectedPartyLeader.equals("-") ? detectedPartyLeader : null;
-                }
-            } else {
-                log.info("ToB HUD names widget not found, hidden, or has no text");
-            }
 
-            // Update cache even if no party found
-            lastPartyCheck = currentTime;
-            detectedPartyLeader = null;
-            waitingForToBHudUpdate = false;
+                    if (!quiet) {
+                        notifications.post(SyncNotice.JOINED, groupName);
+                    }
+                }, () -> invokeProfiled(() -> partyChangeFailed(groupName)));
+                break;
+            case LEAVE:
+                profiler.runWhenIdle(() -> log.info("Leaving Party group: {}", groupName));
+                recorder.record(FlightRecorder.Type.LEAVE, client.getTickCount(), groupName);
+                partyTransitions.leave(() -> {
+                    if (!quiet) {
+                        notifications.post(SyncNotice.LEFT, null);
+                    }
+                }, () -> invokeProfiled(() -> partyChangeFailed(null)));
+                break;
+            case NOTIFY:
+                trace(effect.getNotice().name(), groupName);
+                notifications.post(effect.getNotice(), groupName, effect.getDetail());
+                break;
+        }
+    }
 
-            log.info("=== NO PARTY DETECTED ===");
-            return null;
-        } catch (Exception e) {
-            log.error("Error getting current party ID: {}", e.getMessage());
-            return null;
+    /**
+     * A join or leave gave up after its retries. The reducer assumed it would succeed, so
+     * go back to the hub we are actually in; a failed leave must not count as having left.
+     * The next check then tries again, once the party server's circuit breaker allows it.
+     */
+    private void partyChangeFailed(String groupName) {
+        trace("party change failed", groupName);
+        dispatch(SyncInput.partyHub(party.getPassphrase()));
+        if (groupName != null) {
+            notifications.post(SyncNotice.JOIN_FAILED, groupName);
+        } else {
+            notifications.post(SyncNotice.LEAVE_FAILED, null);
         }
     }
 
+    /**
+     * The sync state as of the last change, safe to read from any thread
+     */
+    SyncState getState() {
+        return state.get();
+    }
 
     /**
-     * Handle ToB party changes by creating/joining appropriate PartyHub group
+     * The settings as of the last config change
      */
-    private void handleToBPartyChange() {
+    ConfigSnapshot getSettings() {
+        return settings;
+    }
 
-        Player localPlayer = client.getLocalPlayer();
-        if (localPlayer == null || localPlayer.getName() == null) {
-            log.warn("Cannot create Party group - local player is null");
+    /**
+     * State of the circuit breaker around party server calls
+     */
+    CircuitBreaker getPartyCircuitBreaker() {
+        return partyTransitions.getCircuitBreaker();
+    }
+
+    /**
+     * As the raid leader, tell the party we are about to leave which hub the team is moving to
+     */
+    private void announceHub(String hub) {
+        final SyncState current = state.get();
+        // Compared the way the receivers compare the leader with the sender
+        String localKey = TeamReconciliation.normalise(current.getLocalName());
+        if (!raid.isInRaid() || localKey == null || !localKey.equals(TeamReconciliation.normalise(current.getLeader()))
+                || !party.isInParty()) {
             return;
         }
 
-        String world = String.valueOf(client.getWorld());
-
-        if (world.equals("0") || world.equals("-1")) {
-            log.warn("Cannot create Party group - invalid world: {}", world);
+        int fingerprint = hudNames.getRosterFingerprint();
+        if (fingerprint == 0) {
             return;
         }
 
-        String actualCurrentParty = getCurrentPartyId();
-
-        log.info("=== PARTY STATE DEBUG ===");
-        log.info("currentGroupName (tracked): '{}'", currentGroupName);
-        log.info("actualCurrentParty (detected): '{}'", actualCurrentParty);
-        log.info("forceJoinMode: {}", config.forceJoinMode());
+        trace("announcing hub", hub);
+        party.send(new HubAnnouncement(hub, current.getLeader(), fingerprint));
+    }
 
-        // Handle leader change case - always join new party when leader changes
-        if (actualCurrentParty != null && actualCurrentParty.startsWith("LEADER_CHANGED:")) {
-            String newLeaderName = actualCurrentParty.substring("LEADER_CHANGED:".length());
-            log.info("Leader changed to '{}' - forcing party hub update for everyone", newLeaderName);
-            // Continue with normal flow to join new party hub
-            actualCurrentParty = null; // Allow joining regardless of current party
+    /**
+     * Bring the reducer up to date with the ToB HUD leader, world and local player.
+     *
+     * @return true if the HUD names changed since the last call
+     */
+    private boolean syncRoster() {
+        int world = client.getWorld();
+        sessionRecorder.world(world);
+        if (world != state.get().getWorld()) {
+            dispatch(SyncInput.world(world));
         }
 
-        // Use actual party if available, otherwise fall back to tracked
-        String currentParty = (actualCurrentParty != null) ? actualCurrentParty : currentGroupName;
-
-        // Update our tracking if we detected a party we weren't tracking
-        if (actualCurrentParty != null && !actualCurrentParty.equals(currentGroupName)) {
-            log.info("Updating party tracking: '{}' -> '{}'", currentGroupName, actualCurrentParty);
-            currentGroupName = actualCurrentParty;
+        Player localPlayer = client.getLocalPlayer();
+        String localName = localPlayer != null ? localPlayer.getName() : null;
+        sessionRecorder.localPlayer(localName);
+        if (localName != null && !localName.equals(state.get().getLocalName())) {
+            dispatch(SyncInput.localPlayer(localName));
         }
 
-        log.info("Final party to check: '{}'", currentParty);
-        log.info("=== END DEBUG ===");
-
-        // SIMPLE LOGIC: Block if in non-sync party and force join disabled
-        if (!config.forceJoinMode() && currentParty != null && !isSyncPartyHub(currentParty)) {
-            String partyLeader = getPartyLeaderFromInterface();
-            String leaderName = (partyLeader != null) ? partyLeader : localPlayer.getName();
-            String suggestedGroupName = world + leaderName.toUpperCase();
-
-            sendGameMessage("You are in non-sync party hub '" + currentParty +
-                    "'. To join raid team party hub \"" + suggestedGroupName +
-                    "\", enable force join in settings or manually join the group");
-            log.info("BLOCKED - in non-sync party: '{}'", currentParty);
-            return;
+        String text = readHudNamesText();
+        sessionRecorder.hudNames(text);
+        if (!hudNames.update(text)) {
+            return false;
         }
 
-        log.info("Proceeding with auto-join");
-
-        // Try to get party leader from the party interface
-        String partyLeader = getPartyLeaderFromInterface();
+        String leader = hudNames.getLeader();
+        recorder.record(FlightRecorder.Type.HUD_PARSE, client.getTickCount(),
+                hudNames.getOccupiedSlots(), 0, leader, null);
 
-        // If no party leader found, use local player as fallback
-        String leaderName;
-        if (partyLeader != null) {
-            leaderName = partyLeader;
-            log.info("Using party leader '{}' for group name", leaderName);
-        } else {
-            leaderName = localPlayer.getName();
-            log.info("No party leader found, using local player '{}' for group name", leaderName);
+        // Only a change in the leader slot can move the team to another hub. Going back to
+        // the accepted leader is passed on too, the reducer drops the pending candidate then
+        int changedSlots = roster.update(hudNames, rosterChanges);
+        if ((changedSlots & TeamRoster.LEADER_SLOT_MASK) != 0) {
+            signalNanos = System.nanoTime();
+            dispatch(SyncInput.roster(leader));
         }
+        return true;
+    }
 
-        String newGroupName = world + leaderName.toUpperCase();
-
-        // Don't recreate the same group
-        if (currentGroupName != null && currentGroupName.equalsIgnoreCase(newGroupName)) {
-            log.debug("Already in correct Party group: {}", currentGroupName);
+    /**
+     * Start or stop recording the session's inputs to match the config
+     */
+    private void updateRecording() {
+        if (settings.isRecordSessions() == sessionRecorder.isRecording()) {
             return;
         }
 
-        log.info("Creating new Party group: {}", newGroupName);
-
-        // Leave old group if in one
-        if (currentGroupName != null) {
-            log.debug("Leaving previous Party group: {}", currentGroupName);
-            leaveCurrentGroup();
+        if (sessionRecorder.isRecording()) {
+            sessionRecorder.stop();
+            log.info("Stopped recording session to {}", sessionRecorder.getFile());
+            return;
         }
 
-        // Join/create new group using PartyService
-        try {
-            // Add a small delay to prevent rapid switching issues
-            Thread.sleep(100);
+        File file = new File(RECORDINGS_DIR, "session-" + System.currentTimeMillis() + ".tpsr");
+        if (sessionRecorder.start(file)) {
+            log.info("Recording session to {}", file);
+        }
+    }
 
-            partyService.changeParty(newGroupName);
-            currentGroupName = newGroupName;
-            log.info("Successfully joined Party group: {}", newGroupName);
+    /**
+     * Drop the team read from the HUD, which the reducer forgot on leaving the raid, so the
+     * same team's HUD is read as new when it comes back and its leader is dispatched again
+     */
+    private void forgetRoster() {
+        hudNames.update(null);
+        roster.update(hudNames, rosterChanges);
+    }
 
-            // Only show message if not during team refresh
-            if (!isTeamRefresh) {
-                sendGameMessage("You have joined party hub " + newGroupName);
-            }
+    private void recordRosterChange(TeamRoster.Change change, int slot, int otherSlot, String name) {
+        recorder.record(FlightRecorder.Type.ROSTER, client.getTickCount(), slot, otherSlot, change, name);
+        reconciliation.onRosterChange(change, slot, otherSlot, name);
+    }
 
-            // Reset team refresh flag
-            isTeamRefresh = false;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("Thread interrupted while joining party: {}", e.getMessage());
-        } catch (Exception e) {
-            log.error("Failed to change to Party group {}: {}", newGroupName, e.getMessage());
+    /**
+     * Index the members of the party we are in, for when we joined it before they were announced
+     */
+    private void seedPartyMembers() {
+        for (long memberId : party.getMemberIds()) {
+            reconciliation.memberJoined(memberId, party.getDisplayName(memberId));
         }
     }
 
-    private void leaveCurrentGroup() {
-        if (currentGroupName != null) {
-            log.info("Leaving Party group: {}", currentGroupName);
-            try {
-                partyService.changeParty(null);
+    private String memberDisplayName(long memberId) {
+        return party.getDisplayName(memberId);
+    }
 
-                // Only show message if not during team refresh
-                if (!isTeamRefresh) {
-                    sendGameMessage("You have left the party");
-                }
-                currentGroupName = null;
-            } catch (Exception e) {
-                log.error("Failed to leave Party group: {}", e.getMessage());
-                currentGroupName = null;
-            }
+    private String readHudNamesText() {
+        Widget roster = rosterWidget;
+        if (roster == null) {
+            roster = client.getWidget(raid.getRosterWidgetId());
+            rosterWidget = roster;
         }
+        return roster != null && !roster.isHidden() ? roster.getText() : null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Record a decision in the flight recorder instead of logging it
+     */
+    private void trace(String decision, Object subject) {
+        recorder.record(FlightRecorder.Type.DECISION, client.getTickCount(), decision, subject);
+    }
+
+    /**
+     * Log an error together with the events that led up to it
+     */
+    private void logError(String message, Exception e) {
+        recorder.record(FlightRecorder.Type.ERROR, client.getTickCount(), message, e.getMessage());
+        log.error("{}: {}\n{}", message, e.getMessage(), recorder.dump());
+    }
+
+    private void configureNotifications() {
+        notifications.configure(settings.isEnableChatMessages(), settings.isNotificationOverlay(),
+                settings.isDesktopNotifications());
+    }
+}
@@ -3,6 +3,8 @@ package wzd.sync;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 @ConfigGroup("tobpartyhub")
 public interface ToBPartyHubPluginConfig extends Config
@@ -29,6 +31,26 @@ public interface ToBPartyHubPluginConfig extends Config
         return true;
     }
 
+    @ConfigItem(
+            keyName = "notificationOverlay",
+            name = "Show notification overlay",
+            description = "Show party sync messages in an overlay for a few seconds"
+    )
+    default boolean notificationOverlay()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "desktopNotifications",
+            name = "Desktop notifications",
+            description = "Also send party sync messages as desktop notifications, at most one every 30 seconds"
+    )
+    default boolean desktopNotifications()
+    {
+        return false;
+    }
+
     @ConfigItem(
             keyName = "forceJoinMode",
             name = "Force join mode",
@@ -38,4 +60,72 @@ public interface ToBPartyHubPluginConfig extends Config
     {
         return true;
     }
-}
\ No newline at end of file
+
+    @Range(
+            max = 20
+    )
+    @Units(Units.TICKS)
+    @ConfigItem(
+            keyName = "leaderStabilisationTicks",
+            name = "Leader change delay",
+            description = "How long a new raid leader must stay on the ToB HUD before switching party hubs. Avoids reconnecting during team reshuffles"
+    )
+    default int leaderStabilisationTicks()
+    {
+        return 2;
+    }
+
+    @ConfigItem(
+            keyName = "resumeAcrossReconnects",
+            name = "Keep hub across hops",
+            description = "Stay in the raid party hub over world hops, relogs and disconnects, and only switch once the world or team actually changed"
+    )
+    default boolean resumeAcrossReconnects()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "predictiveJoin",
+            name = "Join early from party finder",
+            description = "Join the raid team's party hub as soon as you apply to or are accepted into a team on the ToB party finder, instead of when the raid starts"
+    )
+    default boolean predictiveJoin()
+    {
+        return false;
+    }
+
+    @Range(
+            max = 10000
+    )
+    @Units("us")
+    @ConfigItem(
+            keyName = "tickBudgetMicros",
+            name = "Client thread budget",
+            description = "Per tick client thread time for the plugin's handlers. When a tick goes over it, chat messages, logging and the safety net check wait for a quieter tick. 0 for no budget"
+    )
+    default int tickBudgetMicros()
+    {
+        return 1000;
+    }
+
+    @ConfigItem(
+            keyName = "showLatencyOverlay",
+            name = "Show latency overlay",
+            description = "Show how long each stage of joining the raid party hub takes (detection, decision, queueing, party server)"
+    )
+    default boolean showLatencyOverlay()
+    {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "recordSessions",
+            name = "Record sessions",
+            description = "Record the raid events the plugin acts on to a compact file under .runelite/tob-party-sync/recordings, for replaying a session offline"
+    )
+    default boolean recordSessions()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,216 @@
+package wzd.sync;
+
+/**
+ * Fixed five slot view of the ToB HUD names text, e.g. "LEADER<br>MEMBER<br>-<br>-<br>-".
+ * The text is scanned in place into slot offsets; names are only materialised when asked
+ * for, and a text identical to the last scanned one is not scanned again.
+ * Not thread safe, only used from the client thread.
+ */
+class TobHudNames {
+    static final int SLOTS = 5;
+
+    private static final String SEPARATOR = "<br>";
+    private static final int MIN_NAME_LENGTH = 3;
+    private static final int MAX_NAME_LENGTH = 12;
+
+    private final int[] starts = new int[SLOTS];
+    private final int[] ends = new int[SLOTS];
+    private final String[] names = new String[SLOTS];
+
+    private String text;
+    private int textHash;
+
+    /**
+     * Feed the current names text (null when the widget is missing or hidden).
+     *
+     * @return true if the text differs from the last one and was scanned again
+     */
+    boolean update(String newText) {
+        if (newText == text) {
+            return false;
+        }
+
+        if (newText != null && text != null && newText.hashCode() == textHash && newText.equals(text)) {
+            // Same contents in a new String instance; take it, so the next identity check
+            // against the widget's current text hits again
+            text = newText;
+            return false;
+        }
+
+        scan(newText);
+        return true;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * True when there is no text, or every slot is blank or "-" (team empty or HUD still loading)
+     */
+    boolean isEmpty() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (isOccupied(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getOccupiedSlots() {
+        int occupied = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (isOccupied(slot)) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    boolean isOccupied(int slot) {
+        return ends[slot] > starts[slot];
+    }
+
+    /**
+     * Trimmed name in the given slot, or null if the slot is empty
+     */
+    String getName(int slot) {
+        if (!isOccupied(slot)) {
+            return null;
+        }
+
+        String name = names[slot];
+        if (name == null) {
+            name = text.substring(starts[slot], ends[slot]);
+            names[slot] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Whether any slot holds the given player, compared the way the client compares names
+     */
+    boolean hasMember(String name) {
+        String key = TeamReconciliation.normalise(name);
+        if (key == null) {
+            return false;
+        }
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (isOccupied(slot) && key.equals(TeamReconciliation.normalise(getName(slot)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether slot 0 holds something that looks like a player name
+     */
+    boolean hasValidLeader() {
+        int length = ends[0] - starts[0];
+        return length >= MIN_NAME_LENGTH && length <= MAX_NAME_LENGTH;
+    }
+
+    /**
+     * The leader's name if {@link #hasValidLeader()}, otherwise null
+     */
+    String getLeader() {
+        return hasValidLeader() ? getName(0) : null;
+    }
+
+    /**
+     * Fingerprint of the team on the HUD that does not depend on slot order, so a leader
+     * change (a reorder) keeps it and a member joining or leaving changes it.
+     * Names are compared case insensitively. 0 when the HUD is empty.
+     */
+    int getRosterFingerprint() {
+        int fingerprint = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (!isOccupied(slot)) {
+                continue;
+            }
+
+            int hash = 0;
+            for (int i = starts[slot]; i < ends[slot]; i++) {
+                hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+            }
+            // Spread each name's hash before summing so similar names don't cancel out
+            hash *= 0x9E3779B9;
+            fingerprint += hash ^ (hash >>> 16);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Whether any entry of a {@code <br>}-separated names text is the given player, compared
+     * the way the client compares names, as in {@link #hasMember(String)}. Unlike the five
+     * slot roster this covers lists of any length, such as the party finder's applicants.
+     */
+    static boolean containsName(String text, String name) {
+        String key = TeamReconciliation.normalise(name);
+        if (text == null || key == null) {
+            return false;
+        }
+
+        final int length = text.length();
+        int pos = 0;
+        while (pos <= length) {
+            int separator = text.indexOf(SEPARATOR, pos);
+            int end = separator < 0 ? length : separator;
+            if (key.equals(TeamReconciliation.normalise(text.substring(pos, end)))) {
+                return true;
+            }
+
+            if (separator < 0) {
+                break;
+            }
+            pos = separator + SEPARATOR.length();
+        }
+        return false;
+    }
+
+    private void scan(String newText) {
+        text = newText;
+        textHash = newText == null ? 0 : newText.hashCode();
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            starts[slot] = 0;
+            ends[slot] = 0;
+            names[slot] = null;
+        }
+
+        if (newText == null) {
+            return;
+        }
+
+        final int length = newText.length();
+        int pos = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int separator = newText.indexOf(SEPARATOR, pos);
+            int start = pos;
+            int end = separator < 0 ? length : separator;
+
+            // Same whitespace rules as String.trim()
+            while (start < end && newText.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && newText.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            // "-" marks an empty slot
+            if (end - start == 1 && newText.charAt(start) == '-') {
+                end = start;
+            }
+
+            starts[slot] = start;
+            ends[slot] = end;
+
+            if (separator < 0) {
+                break;
+            }
+            pos = separator + SEPARATOR.length();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package wzd.sync;
+
+import net.runelite.api.gameval.InterfaceID;
+
+/**
+ * Widgets of the ToB party finder's party details interface (opened from the notice board),
+ * which lists the members of a team and the players who applied to it. Both lists use the
+ * same {@code <br>}-separated layout as the ToB HUD, leader first.
+ */
+final class TobPartyFinder {
+    static final int GROUP_ID = InterfaceID.TOB_PARTYDETAILS;
+
+    /** The team members list */
+    static final int MEMBERS = InterfaceID.TobPartydetails.MEMBERS;
+
+    /** The applicants list */
+    static final int APPLICANTS = InterfaceID.TobPartydetails.APPLICANTS;
+
+    private TobPartyFinder() {
+    }
+}
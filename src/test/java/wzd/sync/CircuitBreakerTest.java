@@ -0,0 +1,105 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Closed, open and half open transitions of the breaker, on a clock the test moves by hand
+ */
+public class CircuitBreakerTest {
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_NANOS = 1000;
+
+    private long now = 5000;
+    private final CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, OPEN_NANOS, () -> now);
+
+    @Test
+    public void staysClosedBelowTheThreshold() {
+        for (int i = 1; i < THRESHOLD; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(THRESHOLD - 1, breaker.getConsecutiveFailures());
+        assertTrue(breaker.allowRequest());
+        assertEquals(0, breaker.nanosUntilAllowed());
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getConsecutiveFailures());
+        assertEquals(3, breaker.getFailures());
+    }
+
+    @Test
+    public void opensAtTheThresholdAndRefusesCalls() {
+        trip();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTrips());
+        assertEquals(OPEN_NANOS, breaker.nanosUntilAllowed());
+
+        now += 400;
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, breaker.getRejections());
+        assertEquals(OPEN_NANOS - 400, breaker.nanosUntilAllowed());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        trip();
+        now += OPEN_NANOS;
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(0, breaker.nanosUntilAllowed());
+        assertTrue(breaker.allowRequest());
+
+        // Only the one trial while it is in flight
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejections());
+    }
+
+    @Test
+    public void successfulTrialCloses() {
+        trip();
+        now += OPEN_NANOS;
+        assertTrue(breaker.allowRequest());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getConsecutiveFailures());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialOpensAgain() {
+        trip();
+        now += OPEN_NANOS;
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTrips());
+        assertEquals(OPEN_NANOS, breaker.nanosUntilAllowed());
+        assertFalse(breaker.allowRequest());
+    }
+
+    private void trip() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+    }
+}
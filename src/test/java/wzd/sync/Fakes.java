@@ -0,0 +1,281 @@
+package wzd.sync;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import net.runelite.api.Client;
+import net.runelite.api.Player;
+import net.runelite.api.gameval.InterfaceID;
+import net.runelite.api.widgets.Widget;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.party.PartyService;
+
+/**
+ * In-memory stand-ins for the RuneLite services the plugin reads during a decision,
+ * shared by the tests and the benchmarks.
+ * Client and Widget are far too large to implement by hand, so they are dynamic proxies
+ * answering only the calls the sync logic makes. Each proxy gets its own handler and
+ * returns pre-boxed values, so once the JIT has inlined a proxy call its argument array
+ * and boxes don't escape and the fakes add no allocation of their own.
+ */
+final class Fakes {
+    private Fakes() {
+    }
+
+    /**
+     * Mutable ToB HUD names widget
+     */
+    static final class HudNames {
+        String text;
+        boolean hidden;
+    }
+
+    /**
+     * Client thread whose invoke runs straight away and whose invokeLater queues until
+     * {@link #runQueued()}, standing in for the end of the client's frame
+     */
+    static final class QueuedClientThread extends ClientThread {
+        private final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+
+        @Override
+        public void invoke(Runnable r) {
+            r.run();
+        }
+
+        @Override
+        public void invokeLater(Runnable r) {
+            queued.add(r);
+        }
+
+        void runQueued() {
+            Runnable r;
+            while ((r = queued.poll()) != null) {
+                r.run();
+            }
+        }
+    }
+
+    /**
+     * Counts calls that would have reached PartyService.changeParty
+     */
+    static final class PartyCalls {
+        final AtomicInteger joins = new AtomicInteger();
+        final AtomicInteger leaves = new AtomicInteger();
+
+        void changeParty(String groupName) {
+            if (groupName == null) {
+                leaves.incrementAndGet();
+            } else {
+                joins.incrementAndGet();
+            }
+        }
+    }
+
+    static Client client(int world, String localName, HudNames hud) {
+        final Integer boxedWorld = world;
+        return client(() -> boxedWorld, () -> localName, hud);
+    }
+
+    /**
+     * A client whose world is read on every call, for scripts that hop worlds
+     */
+    static Client client(IntSupplier world, String localName, HudNames hud) {
+        return client((Supplier<Object>) world::getAsInt, () -> localName, hud);
+    }
+
+    /**
+     * A client whose world and local player name are read on every call, for replays
+     */
+    static Client client(IntSupplier world, Supplier<String> localName, HudNames hud) {
+        return client((Supplier<Object>) world::getAsInt, localName, hud);
+    }
+
+    private static Client client(Supplier<Object> world, Supplier<String> localName, HudNames hud) {
+        Player localPlayer = proxy(Player.class, (proxy, method, args) ->
+                orDefault(method, "getName".equals(method.getName()) ? localName.get() : null));
+        Widget names = proxy(Widget.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getText":
+                    return hud.text;
+                case "isHidden":
+                    return hud.hidden;
+                default:
+                    return orDefault(method, null);
+            }
+        });
+
+        // Unbox the single int argument (widget ids, varbit ids) right in the handler, which
+        // is small enough to inline into the proxy, so the argument array doesn't escape
+        ClientCalls calls = new ClientCalls(world, localPlayer, names);
+        return proxy(Client.class, (proxy, method, args) -> args != null && args.length == 1 && args[0] instanceof Integer
+                ? calls.call(method, (Integer) args[0])
+                : calls.call(method));
+    }
+
+    private static final class ClientCalls {
+        private static final Integer ZERO = 0;
+
+        private final Supplier<Object> world;
+        private final Player localPlayer;
+        private final Widget names;
+
+        ClientCalls(Supplier<Object> world, Player localPlayer, Widget names) {
+            this.world = world;
+            this.localPlayer = localPlayer;
+            this.names = names;
+        }
+
+        Object call(Method method) {
+            switch (method.getName()) {
+                case "getWorld":
+                    return world.get();
+                case "getLocalPlayer":
+                    return localPlayer;
+                case "isClientThread":
+                    return Boolean.TRUE;
+                case "getTickCount":
+                    return ZERO;
+                default:
+                    return orDefault(method, null);
+            }
+        }
+
+        Object call(Method method, int arg) {
+            switch (method.getName()) {
+                case "getVarbitValue":
+                    return ZERO;
+                case "getWidget":
+                    return arg == InterfaceID.TobHud.NAMES ? names : null;
+                default:
+                    return orDefault(method, null);
+            }
+        }
+    }
+
+    static ToBPartyHubPluginConfig config(boolean forceJoin) {
+        return config(forceJoin, 0);
+    }
+
+    static ToBPartyHubPluginConfig config(boolean forceJoin, int leaderStabilisationTicks) {
+        return proxy(ToBPartyHubPluginConfig.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "forceJoinMode":
+                    return forceJoin;
+                case "autoLeaveWhenExitingToB":
+                    return true;
+                case "enableChatMessages":
+                    return false;
+                case "leaderStabilisationTicks":
+                    return leaderStabilisationTicks;
+                default:
+                    return orDefault(method, null);
+            }
+        });
+    }
+
+    /**
+     * Build a plugin wired to fakes, the way Guice would inject it
+     */
+    static ToBPartyHubPlugin plugin(Client client, ToBPartyHubPluginConfig config, PartyCalls partyCalls) {
+        return plugin(client, config, partyCalls::changeParty);
+    }
+
+    /**
+     * A plugin whose client thread runs invoked work straight away, on whichever thread
+     * invokes it, including a failed transition's callback
+     */
+    static ToBPartyHubPlugin plugin(Client client, ToBPartyHubPluginConfig config, Consumer<String> changeParty) {
+        return plugin(client, config, changeParty, new QueuedClientThread());
+    }
+
+    static ToBPartyHubPlugin plugin(Client client, ToBPartyHubPluginConfig config, Consumer<String> changeParty,
+                                    ClientThread clientThread) {
+        FlightRecorder recorder = new FlightRecorder();
+        SyncLatency latency = new SyncLatency();
+        return plugin(client, config, new PartyTransitionExecutor(changeParty, recorder, latency),
+                recorder, latency, clientThread);
+    }
+
+    static ToBPartyHubPlugin plugin(Client client, ToBPartyHubPluginConfig config, PartyTransitionExecutor transitions,
+                                    FlightRecorder recorder, SyncLatency latency, ClientThread clientThread) {
+        return plugin(client, config, transitions, recorder, latency, clientThread,
+                new PartyLink(disconnectedPartyService()));
+    }
+
+    static ToBPartyHubPlugin plugin(Client client, ToBPartyHubPluginConfig config, PartyTransitionExecutor transitions,
+                                    FlightRecorder recorder, SyncLatency latency, ClientThread clientThread,
+                                    PartyLink party) {
+        transitions.start();
+
+        ToBPartyHubPlugin plugin = new ToBPartyHubPlugin();
+        inject(plugin, "client", client);
+        inject(plugin, "config", config);
+        inject(plugin, "party", party);
+        inject(plugin, "notifications", new SyncNotifications(null, null));
+        inject(plugin, "recorder", recorder);
+        inject(plugin, "latency", latency);
+        inject(plugin, "profiler", new TickProfiler());
+        inject(plugin, "clientThread", clientThread);
+        inject(plugin, "partyTransitions", transitions);
+        plugin.resetSync();
+        return plugin;
+    }
+
+    static void stop(ToBPartyHubPlugin plugin) {
+        try {
+            Field field = ToBPartyHubPlugin.class.getDeclaredField("partyTransitions");
+            field.setAccessible(true);
+            ((PartyTransitionExecutor) field.get(plugin)).stop();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A PartyService that is in no party. It is allocated without running its constructor,
+     * which needs the whole client, so it has no party id, no passphrase and sends nothing.
+     */
+    private static PartyService disconnectedPartyService() {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field field = unsafe.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (PartyService) unsafe.getMethod("allocateInstance", Class.class)
+                    .invoke(field.get(null), PartyService.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create a PartyService", e);
+        }
+    }
+
+    private static void inject(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to inject " + name, e);
+        }
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * The result, or the default value of the method's primitive return type (0, false, ...) for null
+     */
+    private static Object orDefault(Method method, Object result) {
+        if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+            return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+        }
+        return result;
+    }
+}
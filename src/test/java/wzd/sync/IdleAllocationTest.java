@@ -0,0 +1,137 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPostFired;
+import net.runelite.api.events.VarbitChanged;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The "nothing changed" paths must not allocate: in a raid with a settled team, ticks,
+ * script and varbit events and the safety net check run thousands of times against the
+ * fakes, and the bytes the test thread allocated in steady state have to be zero.
+ * Allocation is read from the JVM's per-thread counter (com.sun.management.ThreadMXBean),
+ * with the cost of reading the counter itself measured and subtracted.
+ */
+public class IdleAllocationTest {
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 10_000;
+
+    private static final int TOB_VARBIT = 6440;
+    private static final String TEAM = "WiseOldMan<br>Zezima<br>LynxTitan<br>B0aty<br>Woox";
+
+    private final Fakes.HudNames hud = new Fakes.HudNames();
+    private final Fakes.PartyCalls partyCalls = new Fakes.PartyCalls();
+    private final Fakes.QueuedClientThread clientThread = new Fakes.QueuedClientThread();
+    private final GameTick gameTick = new GameTick();
+    private final ScriptPostFired scriptPostFired = new ScriptPostFired();
+
+    private com.sun.management.ThreadMXBean threads;
+    private ToBPartyHubPlugin plugin;
+
+    @Before
+    public void setUp() {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue("Thread allocation counting unsupported", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        hud.text = TEAM;
+        plugin = Fakes.plugin(Fakes.client(330, "Woox", hud), Fakes.config(true, 2),
+                partyCalls::changeParty, clientThread);
+
+        // Enter the raid and settle on the team hub
+        plugin.onVarbitChanged(varbit(TOB_VARBIT, 1));
+        clientThread.runQueued();
+        plugin.onGameTick(gameTick);
+        clientThread.runQueued();
+    }
+
+    @After
+    public void tearDown() {
+        Fakes.stop(plugin);
+    }
+
+    @Test
+    public void idleTick() {
+        assertNoAllocation("onGameTick", () -> plugin.onGameTick(gameTick));
+    }
+
+    @Test
+    public void hudRedrawnWithSameTeam() {
+        assertNoAllocation("onScriptPostFired + onGameTick", () -> {
+            plugin.onScriptPostFired(scriptPostFired);
+            plugin.onGameTick(gameTick);
+        });
+    }
+
+    @Test
+    public void untrackedVarbit() {
+        VarbitChanged event = varbit(4070, 1);
+        assertNoAllocation("onVarbitChanged (untracked)", () -> plugin.onVarbitChanged(event));
+    }
+
+    @Test
+    public void unchangedRaidVarbit() {
+        VarbitChanged event = varbit(TOB_VARBIT, 1);
+        assertNoAllocation("onVarbitChanged (unchanged)", () -> plugin.onVarbitChanged(event));
+    }
+
+    @Test
+    public void safetyNetCheck() {
+        assertNoAllocation("handleToBPartyChange", plugin::handleToBPartyChange);
+    }
+
+    @Test
+    public void reducerIdleTick() {
+        PartySyncReducer reducer = new PartySyncReducer(SyncSettings.DEFAULTS);
+        List<SyncEffect> effects = new ArrayList<>();
+        SyncState state = SyncState.INITIAL;
+        state = reducer.reduce(state, SyncInput.world(330), effects);
+        state = reducer.reduce(state, SyncInput.RAID_ENTERED, effects);
+        final SyncState inRaid = reducer.reduce(state, SyncInput.roster("Zezima"), effects);
+        effects.clear();
+
+        assertNoAllocation("reduce TICK/CHECK", () -> {
+            reducer.reduce(inRaid, SyncInput.TICK, effects);
+            reducer.reduce(inRaid, SyncInput.CHECK, effects);
+        });
+        assertEquals("effects of an idle raid", 0, effects.size());
+    }
+
+    private void assertNoAllocation(String what, Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+
+        // Also make sure the team really was settled: steady state means no party calls
+        int joins = partyCalls.joins.get();
+
+        final long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals(what + " bytes allocated over " + ITERATIONS + " calls", 0, Math.max(0, allocated));
+        assertEquals(what + " party joins in steady state", joins, partyCalls.joins.get());
+    }
+
+    private static VarbitChanged varbit(int varbitId, int value) {
+        VarbitChanged event = new VarbitChanged();
+        event.setVarbitId(varbitId);
+        event.setValue(value);
+        return event;
+    }
+}
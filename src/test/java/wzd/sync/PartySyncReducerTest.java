@@ -0,0 +1,285 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The reducer's decisions, input by input. Every test starts from the initial state and
+ * only goes through {@link PartySyncReducer#reduce}, checking the effects of each input
+ * and the state it leaves behind.
+ */
+public class PartySyncReducerTest {
+    private static final int WORLD = 330;
+    private static final String LOCAL = "Woox";
+
+    private final List<SyncEffect> effects = new ArrayList<>();
+    private PartySyncReducer reducer;
+    private SyncState state;
+
+    @Test
+    public void firstLeaderIsJoinedStraightAway() {
+        inRaid(settings(true, true, 2, false, true));
+
+        assertEquals("330ZEZIMA", state.getCurrentHub());
+        assertEquals("Zezima", state.getLeader());
+        assertNull(state.getCandidateLeader());
+    }
+
+    @Test
+    public void newLeaderWaitsForTheStabilisationWindow() {
+        inRaid(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.roster("Lynx Titan"));
+        assertEquals("Lynx Titan", state.getCandidateLeader());
+        reduce(SyncInput.TICK);
+        assertEquals("330ZEZIMA", state.getCurrentHub());
+
+        reduce(SyncInput.TICK, SyncEffect.notify(SyncNotice.TEAM_REFRESHED, "Lynx Titan"),
+                SyncEffect.join("330LYNX TITAN", false));
+        assertEquals("Lynx Titan", state.getLeader());
+        assertNull(state.getCandidateLeader());
+    }
+
+    @Test
+    public void leaderFlickeringBackDropsTheCandidate() {
+        inRaid(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.roster("Lynx Titan"));
+        reduce(SyncInput.roster("Zezima"));
+        assertNull(state.getCandidateLeader());
+
+        SyncState settled = state;
+        reduce(SyncInput.TICK);
+        reduce(SyncInput.TICK);
+        assertSame(settled, state);
+    }
+
+    @Test
+    public void intermediateLeaderRestartsTheWindow() {
+        inRaid(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.roster("Lynx Titan"));
+        reduce(SyncInput.TICK);
+        reduce(SyncInput.roster("B0aty"));
+        assertEquals(0, state.getCandidateTicks());
+
+        reduce(SyncInput.TICK);
+        reduce(SyncInput.TICK, SyncEffect.notify(SyncNotice.TEAM_REFRESHED, "B0aty"),
+                SyncEffect.join("330B0ATY", false));
+    }
+
+    @Test
+    public void noWindowSwitchesImmediately() {
+        inRaid(settings(true, true, 0, false, true));
+
+        reduce(SyncInput.roster("B0aty"), SyncEffect.notify(SyncNotice.TEAM_REFRESHED, "B0aty"),
+                SyncEffect.join("330B0ATY", false));
+    }
+
+    @Test
+    public void announcedLeaderSkipsTheWindow() {
+        inRaid(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.roster("Lynx Titan"));
+        reduce(SyncInput.announcedLeader("Lynx Titan"), SyncEffect.notify(SyncNotice.TEAM_REFRESHED, "Lynx Titan"),
+                SyncEffect.join("330LYNX TITAN", false));
+        assertNull(state.getCandidateLeader());
+    }
+
+    @Test
+    public void nonSyncHubIsReportedOnceWithForceJoinOff() {
+        start(settings(false, true, 2, false, true));
+        reduce(SyncInput.partyHub("My Clan"));
+        reduce(SyncInput.RAID_ENTERED, SyncEffect.notify(SyncNotice.NON_SYNC_HUB, "My Clan", "330WOOX"));
+        reduce(SyncInput.roster("Zezima"), SyncEffect.notify(SyncNotice.NON_SYNC_HUB, "My Clan", "330ZEZIMA"));
+        assertEquals("330ZEZIMA", state.getBlockedHub());
+        assertEquals("My Clan", state.getCurrentHub());
+
+        // Told once per target hub, not on every check
+        reduce(SyncInput.CHECK);
+        reduce(SyncInput.PARTY_CHANGED);
+
+        // Out of the clan hub, the team hub is joined
+        reduce(SyncInput.partyHub(null));
+        assertNull(state.getBlockedHub());
+        reduce(SyncInput.CHECK, SyncEffect.join("330ZEZIMA", false));
+    }
+
+    @Test
+    public void syncHubIsLeftWithForceJoinOff() {
+        start(settings(false, true, 2, false, true));
+        reduce(SyncInput.partyHub("330OLDTEAM"));
+        reduce(SyncInput.RAID_ENTERED, SyncEffect.join("330WOOX", false));
+    }
+
+    @Test
+    public void nonSyncHubIsLeftWithForceJoinOn() {
+        start(settings(true, true, 2, false, true));
+        reduce(SyncInput.partyHub("My Clan"));
+        reduce(SyncInput.RAID_ENTERED, SyncEffect.join("330WOOX", false));
+    }
+
+    @Test
+    public void leavingTheRaidLeavesTheSyncHub() {
+        inRaid(settings(true, true, 2, false, true));
+        reduce(SyncInput.roster("Lynx Titan"));
+
+        reduce(SyncInput.RAID_LEFT, SyncEffect.leave("330ZEZIMA", false));
+        assertFalse(state.isInRaid());
+        assertNull(state.getCurrentHub());
+        assertNull(state.getLeader());
+        assertNull(state.getCandidateLeader());
+
+        // Not in a raid any more, so nothing is left twice
+        reduce(SyncInput.RAID_LEFT);
+    }
+
+    @Test
+    public void leavingTheRaidKeepsTheHubWithoutAutoLeave() {
+        inRaid(settings(true, false, 2, false, true));
+
+        reduce(SyncInput.RAID_LEFT);
+        assertFalse(state.isInRaid());
+        assertEquals("330ZEZIMA", state.getCurrentHub());
+    }
+
+    @Test
+    public void leavingTheRaidKeepsANonSyncHubWithForceJoinOff() {
+        start(settings(false, true, 2, false, true));
+        reduce(SyncInput.partyHub("My Clan"));
+        reduce(SyncInput.RAID_ENTERED, SyncEffect.notify(SyncNotice.NON_SYNC_HUB, "My Clan", "330WOOX"));
+
+        reduce(SyncInput.RAID_LEFT);
+        assertEquals("My Clan", state.getCurrentHub());
+        assertNull(state.getBlockedHub());
+    }
+
+    @Test
+    public void logoutKeepsTheHubWhenResuming() {
+        inRaid(settings(true, true, 2, false, true));
+        reduce(SyncInput.roster("Lynx Titan"));
+
+        reduce(SyncInput.LOGGED_OUT);
+        assertEquals("330ZEZIMA", state.getCurrentHub());
+        assertNull(state.getCandidateLeader());
+
+        // Same world and team after the reconnect: no party churn
+        reduce(SyncInput.world(WORLD));
+        reduce(SyncInput.CHECK);
+
+        // Another world: the hub follows
+        reduce(SyncInput.world(331));
+        reduce(SyncInput.CHECK, SyncEffect.join("331ZEZIMA", false));
+    }
+
+    @Test
+    public void logoutForgetsTheHubWithoutResuming() {
+        inRaid(settings(true, true, 2, false, false));
+
+        reduce(SyncInput.LOGGED_OUT);
+        assertNull(state.getCurrentHub());
+        reduce(SyncInput.CHECK, SyncEffect.join("330ZEZIMA", false));
+    }
+
+    @Test
+    public void shutdownLeavesTheSyncHub() {
+        inRaid(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.SHUTDOWN, SyncEffect.leave("330ZEZIMA", false));
+        assertNull(state.getCurrentHub());
+    }
+
+    @Test
+    public void shutdownKeepsANonSyncHub() {
+        start(settings(true, true, 2, false, true));
+        reduce(SyncInput.partyHub("My Clan"));
+
+        reduce(SyncInput.SHUTDOWN);
+        assertEquals("My Clan", state.getCurrentHub());
+    }
+
+    @Test
+    public void predictionIsJoinedAndLeftWhenNoRaidFollows() {
+        start(settings(true, true, 2, true, true));
+
+        reduce(SyncInput.predictedLeader("Zezima"), SyncEffect.join("330ZEZIMA", false));
+        assertFalse(state.isInRaid());
+
+        reduce(SyncInput.PREDICTION_EXPIRED, SyncEffect.leave("330ZEZIMA", true));
+        assertNull(state.getCurrentHub());
+        assertNull(state.getLeader());
+    }
+
+    @Test
+    public void predictionIsKeptOnceTheRaidStarts() {
+        start(settings(true, true, 2, true, true));
+        reduce(SyncInput.predictedLeader("Zezima"), SyncEffect.join("330ZEZIMA", false));
+
+        reduce(SyncInput.RAID_ENTERED);
+        reduce(SyncInput.PREDICTION_EXPIRED);
+        assertEquals("330ZEZIMA", state.getCurrentHub());
+
+        // The HUD is authoritative in the raid
+        reduce(SyncInput.predictedLeader("B0aty"));
+    }
+
+    @Test
+    public void predictionIsIgnoredWhenDisabled() {
+        start(settings(true, true, 2, false, true));
+
+        reduce(SyncInput.predictedLeader("Zezima"));
+        assertNull(state.getCurrentHub());
+        assertNull(state.getLeader());
+    }
+
+    @Test
+    public void predictionExpiryKeepsAHubWeMovedOn() {
+        start(settings(true, true, 2, true, true));
+        reduce(SyncInput.predictedLeader("Zezima"), SyncEffect.join("330ZEZIMA", false));
+        reduce(SyncInput.partyHub("My Clan"));
+
+        reduce(SyncInput.PREDICTION_EXPIRED);
+        assertEquals("My Clan", state.getCurrentHub());
+        assertNull(state.getLeader());
+    }
+
+    private static SyncSettings settings(boolean forceJoin, boolean autoLeave, int stabilisationTicks,
+                                         boolean predictiveJoin, boolean resume) {
+        return new SyncSettings(forceJoin, autoLeave, stabilisationTicks, predictiveJoin, resume);
+    }
+
+    /**
+     * World and local player known, not in a raid
+     */
+    private void start(SyncSettings settings) {
+        reducer = new PartySyncReducer(settings);
+        state = SyncState.INITIAL;
+        reduce(SyncInput.world(WORLD));
+        reduce(SyncInput.localPlayer(LOCAL));
+    }
+
+    /**
+     * In a raid led by Zezima, in the team's hub
+     */
+    private void inRaid(SyncSettings settings) {
+        start(settings);
+        reduce(SyncInput.RAID_ENTERED, SyncEffect.join("330WOOX", false));
+        reduce(SyncInput.roster("Zezima"), SyncEffect.join("330ZEZIMA", false));
+    }
+
+    private void reduce(SyncInput input, SyncEffect... expected) {
+        effects.clear();
+        state = reducer.reduce(state, input, effects);
+        assertEquals("effects of " + input, expected.length == 0 ? Collections.emptyList() : Arrays.asList(expected),
+                effects);
+    }
+}
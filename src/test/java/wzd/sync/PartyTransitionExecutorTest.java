@@ -0,0 +1,79 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Retry timing of party transitions and how they wait out an open circuit breaker
+ */
+public class PartyTransitionExecutorTest {
+    private PartyTransitionExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    @Test
+    public void backoffStaysWithinItsBounds() {
+        // Exponential from 250ms, capped at 4s, with the upper half random
+        for (int attempt = 1; attempt <= 64; attempt++) {
+            long ceiling = Math.min(4000, 250L << Math.min(attempt - 1, 16));
+            for (int i = 0; i < 1000; i++) {
+                long backoff = PartyTransitionExecutor.backoffMillis(attempt);
+                assertTrue("attempt " + attempt + " backoff " + backoff,
+                        backoff >= ceiling / 2 && backoff <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void refusedAttemptWaitsForTheBreaker() throws InterruptedException {
+        // Open longer than all retries together would take, so counting refusals as attempts gives up
+        CircuitBreaker breaker = new CircuitBreaker(1, TimeUnit.MILLISECONDS.toNanos(2000));
+        breaker.onFailure();
+
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger failed = new AtomicInteger();
+        executor = new PartyTransitionExecutor(hub -> calls.incrementAndGet(), new FlightRecorder(),
+                new SyncLatency(), breaker);
+        executor.start();
+
+        executor.join("330ZEZIMA", done::countDown, failed::incrementAndGet);
+
+        assertTrue("join not completed", done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, failed.get());
+        assertEquals(1, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.getRejections() >= 1);
+    }
+
+    @Test
+    public void failingCallsGiveUpAfterAllAttempts() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger joined = new AtomicInteger();
+        executor = new PartyTransitionExecutor(hub -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("party server down");
+        }, new FlightRecorder(), new SyncLatency(), new CircuitBreaker(100, TimeUnit.SECONDS.toNanos(30)));
+        executor.start();
+
+        executor.join("330ZEZIMA", joined::incrementAndGet, failed::countDown);
+
+        assertTrue("join did not give up", failed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, joined.get());
+        assertEquals(4, calls.get());
+        assertEquals(4, executor.getCircuitBreaker().getFailures());
+    }
+}
@@ -0,0 +1,158 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Recovery of the last complete session entry from the journal file, after clean closes,
+ * wrap-around and records damaged the way a crash or a bad disk would leave them.
+ */
+public class SessionJournalTest {
+    private static final int HEADER = 8;
+
+    private File file;
+    private SessionJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".journal");
+        assertTrue(file.delete());
+        journal = new SessionJournal(file);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+        file.delete();
+    }
+
+    @Test
+    public void newFileHasNoEntry() {
+        assertNull(journal.open());
+        assertTrue(journal.isOpen());
+    }
+
+    @Test
+    public void lastEntryIsRecovered() {
+        journal.open();
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        journal.append("330LYNX TITAN", "Lynx Titan", 330, 20, 2000L);
+        journal.close();
+        assertFalse(journal.isOpen());
+
+        assertEntry(journal.open(), "330LYNX TITAN", "Lynx Titan", 330, 20, 2000L);
+    }
+
+    @Test
+    public void nullHubIsRecovered() {
+        journal.open();
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        journal.append(null, null, 330, 20, 2000L);
+        journal.close();
+
+        SessionJournal.Entry entry = journal.open();
+        assertEntry(entry, null, null, 330, 20, 2000L);
+        assertFalse(entry.isResumable(330, 2000L, 60_000L));
+    }
+
+    @Test
+    public void appendsAfterRecoveryFollowTheRecoveredEntries() {
+        journal.open();
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        journal.close();
+
+        journal.open();
+        journal.append("331ZEZIMA", "Zezima", 331, 20, 2000L);
+        journal.close();
+
+        assertEntry(journal.open(), "331ZEZIMA", "Zezima", 331, 20, 2000L);
+    }
+
+    @Test
+    public void wrapAroundKeepsTheNewestEntry() {
+        journal.open();
+        // Far more than fits in the file, so it starts over several times
+        for (int i = 0; i < 2000; i++) {
+            journal.append("330PLAYER" + i, "Player" + i, 330, i, i);
+        }
+        journal.close();
+
+        assertEntry(journal.open(), "330PLAYER1999", "Player1999", 330, 1999, 1999L);
+
+        journal.append("331WOOX", "Woox", 331, 5000, 5000L);
+        journal.close();
+        assertEntry(journal.open(), "331WOOX", "Woox", 331, 5000, 5000L);
+    }
+
+    @Test
+    public void uncommittedRecordIsSkipped() throws IOException {
+        journal.open();
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        journal.append("330LYNX TITAN", "Lynx Titan", 330, 20, 2000L);
+        journal.close();
+
+        // Crash before the second record's length was written
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(secondRecord(raf));
+            raf.writeInt(0);
+        }
+
+        assertEntry(journal.open(), "330ZEZIMA", "Zezima", 330, 10, 1000L);
+    }
+
+    @Test
+    public void corruptRecordIsSkipped() throws IOException {
+        journal.open();
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        journal.append("330LYNX TITAN", "Lynx Titan", 330, 20, 2000L);
+        journal.close();
+
+        // Flip a payload byte of the second record so its checksum no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long payload = secondRecord(raf) + HEADER;
+            raf.seek(payload);
+            int b = raf.read();
+            raf.seek(payload);
+            raf.write(b ^ 0xFF);
+        }
+
+        assertEntry(journal.open(), "330ZEZIMA", "Zezima", 330, 10, 1000L);
+
+        // The next append takes the damaged record's place
+        journal.append("331ZEZIMA", "Zezima", 331, 30, 3000L);
+        journal.close();
+        assertEntry(journal.open(), "331ZEZIMA", "Zezima", 331, 30, 3000L);
+    }
+
+    @Test
+    public void appendWhileClosedIsIgnored() {
+        journal.append("330ZEZIMA", "Zezima", 330, 10, 1000L);
+        assertNull(journal.open());
+    }
+
+    private static long secondRecord(RandomAccessFile raf) throws IOException {
+        raf.seek(0);
+        return HEADER + raf.readInt();
+    }
+
+    private static void assertEntry(SessionJournal.Entry entry, String hub, String leader, int world, int tick,
+                                    long wallMillis) {
+        assertNotNull(entry);
+        assertEquals(hub, entry.getHub());
+        assertEquals(leader, entry.getLeader());
+        assertEquals(world, entry.getWorld());
+        assertEquals(tick, entry.getTick());
+        assertEquals(wallMillis, entry.getWallMillis());
+    }
+}
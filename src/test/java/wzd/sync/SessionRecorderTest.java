@@ -0,0 +1,192 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.runelite.api.GameState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Whatever is recorded reads back as the same inputs in the same order, including HUD deltas,
+ * texts too long to store in full and recordings cut short by a client that didn't stop.
+ */
+public class SessionRecorderTest {
+    private static final String TEAM = "Zezima<br>Woox<br>-<br>-<br>-";
+    private static final String NEW_LEADER = "Lynx Titan<br>Woox<br>-<br>-<br>-";
+    private static final String NON_ASCII = "Zézima<br>Wöox<br>水<br>-<br>-";
+
+    private File file;
+    private final SessionRecorder recorder = new SessionRecorder();
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".tpsr");
+    }
+
+    @After
+    public void tearDown() {
+        recorder.stop();
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        assertTrue(recorder.start(file));
+        recorder.world(330);
+        recorder.localPlayer("Wöox");
+        recorder.gameState(GameState.LOGGED_IN);
+        recorder.tick();
+        recorder.tick();
+        recorder.tick();
+        recorder.varbit(6440, 2);
+        recorder.varbit(6441, -1);
+        recorder.hudNames(TEAM);
+        recorder.tick();
+        recorder.hudNames(NEW_LEADER);
+        recorder.hudNames(NEW_LEADER);
+        recorder.hudNames(null);
+        recorder.hudNames(NON_ASCII);
+        recorder.hudNames(TEAM);
+        // Unchanged world and player aren't written again
+        recorder.world(330);
+        recorder.localPlayer("Wöox");
+        recorder.world(331);
+        recorder.gameState(GameState.HOPPING);
+        recorder.stop();
+
+        assertEquals(Arrays.asList(
+                "world 330", "player Wöox", "state LOGGED_IN", "tick", "tick", "tick",
+                "varbit 6440=2", "varbit 6441=-1", "hud " + TEAM, "tick", "hud " + NEW_LEADER, "hud null",
+                "hud " + NON_ASCII, "hud " + TEAM, "world 331", "state HOPPING"), read(bytes()));
+    }
+
+    @Test
+    public void oversizedTextIsStoredCut() throws IOException {
+        String longA = repeat('A', 3000);
+        String longB = repeat('A', 1000) + repeat('B', 1500) + repeat('A', 500);
+
+        assertTrue(recorder.start(file));
+        recorder.hudNames(TEAM);
+        recorder.hudNames(longA);
+        recorder.hudNames(longB);
+        recorder.hudNames(TEAM);
+        recorder.hudNames(NEW_LEADER);
+        // Shares a prefix with the last text, but the changed middle is too long for a delta
+        String appended = NEW_LEADER + repeat('C', 2000);
+        recorder.hudNames(appended);
+        recorder.hudNames(TEAM);
+        recorder.stop();
+
+        assertEquals(Arrays.asList("hud " + TEAM, "hud " + longA.substring(0, 1024), "hud " + longB.substring(0, 1024),
+                "hud " + TEAM, "hud " + NEW_LEADER, "hud " + appended.substring(0, 1024), "hud " + TEAM),
+                read(bytes()));
+    }
+
+    @Test
+    public void truncatedTailDropsOnlyTheLastRecord() throws IOException {
+        assertTrue(recorder.start(file));
+        recorder.world(330);
+        recorder.hudNames(TEAM);
+        recorder.tick();
+        recorder.varbit(6440, 2);
+        recorder.hudNames(NEW_LEADER);
+        recorder.localPlayer("Woox");
+        recorder.stop();
+
+        byte[] full = bytes();
+        List<String> all = read(full);
+        // Every cut after the header reads back a prefix of the full recording
+        for (int length = 5; length < full.length; length++) {
+            List<String> events = read(Arrays.copyOf(full, length));
+            assertTrue("cut at " + length, events.size() < all.size());
+            assertEquals("cut at " + length, all.subList(0, events.size()), events);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptPrefixIsRejected() throws IOException {
+        // A delta keeping four chars of a text that was never recorded
+        read(recording(3, 5, 0, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptSuffixIsRejected() throws IOException {
+        // "ab" then a delta keeping one char before and two after
+        read(recording(3, 1, 0, 2, 'a', 'b', 3, 2, 2, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void notARecording() throws IOException {
+        read(new byte[]{'T', 'P', 'S', 'X', 1});
+    }
+
+    private byte[] bytes() throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static byte[] recording(int... records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SessionRecorder.MAGIC);
+        out.writeByte(SessionRecorder.VERSION);
+        for (int b : records) {
+            out.writeByte(b);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> read(byte[] recording) throws IOException {
+        List<String> events = new ArrayList<>();
+        SessionRecorder.read(new ByteArrayInputStream(recording), new SessionRecorder.Handler() {
+            @Override
+            public void onTick() {
+                events.add("tick");
+            }
+
+            @Override
+            public void onVarbit(int varbitId, int value) {
+                events.add("varbit " + varbitId + "=" + value);
+            }
+
+            @Override
+            public void onGameState(GameState gameState) {
+                events.add("state " + gameState);
+            }
+
+            @Override
+            public void onHudNames(String text) {
+                events.add("hud " + text);
+            }
+
+            @Override
+            public void onWorld(int world) {
+                events.add("world " + world);
+            }
+
+            @Override
+            public void onLocalPlayer(String name) {
+                events.add("player " + name);
+            }
+        });
+        return events;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
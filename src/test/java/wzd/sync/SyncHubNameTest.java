@@ -0,0 +1,75 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * The single pass classifier has to agree with the regex it replaced,
+ * {@code ^\d{3,4}[A-Z0-9]+$}, on whether a name is a sync hub.
+ */
+public class SyncHubNameTest {
+    private static final Pattern LEGACY = Pattern.compile("^\\d{3,4}[A-Z0-9]+$");
+
+    // Digits, upper and lower case letters, punctuation, and non-ASCII digits and letters
+    private static final char[] ALPHABET = {'0', '3', '9', 'A', 'Z', 'a', 'z', ' ', '-', '_',
+            '٣', '３', 'Ä'};
+
+    @Test
+    public void boundaryNames() {
+        String[] names = {
+                "", "3", "33", "330", "3304", "33044", "330440",
+                "33WOOX", "330WOOX", "3304WOOX", "33044WOOX", "330440WOOX",
+                "330woox", "330Woox", "3304woox", "330WOOX ", " 330WOOX", "330 WOOX", "330-WOOX",
+                "330", "3300", "330A", "3300A", "33000A", "330B0ATY", "3309",
+                "٣٣٠WOOX", "３３０WOOX", "330٣", "330WÄX",
+                "ABCDEF", "WOOX330",
+        };
+        for (String name : names) {
+            assertAgrees(name);
+        }
+    }
+
+    @Test
+    public void nullIsNotASyncHub() {
+        assertFalse(SyncHubName.isSyncHub(null));
+    }
+
+    @Test
+    public void everyShortName() {
+        // Every name of up to five characters over the alphabet, plus a leader part
+        for (int length = 0; length <= 5; length++) {
+            char[] chars = new char[length];
+            everyName(chars, 0);
+        }
+    }
+
+    @Test
+    public void formattedNameIsASyncHub() {
+        assertEquals("330WOOX", SyncHubName.format(330, "Woox"));
+        assertTrue(SyncHubName.isSyncHub(SyncHubName.format(330, "Woox")));
+    }
+
+    private void everyName(char[] chars, int index) {
+        if (index == chars.length) {
+            String name = new String(chars);
+            assertAgrees(name);
+            assertAgrees(name + "WOOX");
+            return;
+        }
+
+        for (char c : ALPHABET) {
+            chars[index] = c;
+            everyName(chars, index + 1);
+        }
+    }
+
+    private static void assertAgrees(String name) {
+        boolean expected = LEGACY.matcher(name).matches();
+        assertEquals("isSyncHub(\"" + name + "\")", expected, SyncHubName.isSyncHub(name));
+    }
+}
@@ -0,0 +1,161 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Notices batched into one line per burst, with the lines each sink received captured
+ * in place of the chat message manager and the notifier.
+ */
+public class SyncNotificationsTest {
+    private final List<String> chatLines = new ArrayList<>();
+    private final List<String> desktopLines = new ArrayList<>();
+    private final SyncNotifications notifications = new SyncNotifications(null, null) {
+        @Override
+        void sendChat(String text) {
+            chatLines.add(text);
+        }
+
+        @Override
+        void sendDesktop(String text) {
+            desktopLines.add(text);
+        }
+    };
+
+    private int ticks;
+
+    @Before
+    public void setUp() {
+        notifications.configure(true, true, true);
+    }
+
+    @Test
+    public void burstIsMergedIntoOneLine() {
+        notifications.post(SyncNotice.TEAM_REFRESHED, "Zezima");
+        notifications.post(SyncNotice.JOINED, "330ZEZIMA");
+
+        // Held while notices keep coming, shown on the first quiet tick
+        tick();
+        assertEquals(Collections.emptyList(), chatLines);
+        tick();
+
+        String line = "Team refreshed - new leader: Zezima, joined party hub 330ZEZIMA.";
+        assertEquals(Collections.singletonList(line), chatLines);
+        assertEquals(Collections.singletonList(line), desktopLines);
+        assertEquals(line, notifications.getOverlayLine());
+    }
+
+    @Test
+    public void repeatsAreDropped() {
+        notifications.post(SyncNotice.JOIN_FAILED, "330ZEZIMA");
+        notifications.post(SyncNotice.JOIN_FAILED, "330ZEZIMA");
+        settle();
+
+        assertEquals(Collections.singletonList("Unable to join party hub 330ZEZIMA."), chatLines);
+    }
+
+    @Test
+    public void laterHubChangeReplacesTheEarlierOne() {
+        notifications.post(SyncNotice.JOINED, "330ZEZIMA");
+        notifications.post(SyncNotice.LEFT, null);
+        settle();
+
+        assertEquals(Collections.singletonList("Left the party."), chatLines);
+    }
+
+    @Test
+    public void laterLeaderReplacesTheEarlierOne() {
+        notifications.post(SyncNotice.TEAM_REFRESHED, "Zezima");
+        notifications.post(SyncNotice.JOINED, "330ZEZIMA");
+        notifications.post(SyncNotice.TEAM_REFRESHED, "Woox");
+        notifications.post(SyncNotice.JOINED, "330WOOX");
+        settle();
+
+        assertEquals(Collections.singletonList("Team refreshed - new leader: Woox, joined party hub 330WOOX."),
+                chatLines);
+    }
+
+    @Test
+    public void busyBatchIsFlushedAfterMaxBatchTicks() {
+        for (int i = 1; i < SyncNotifications.MAX_BATCH_TICKS; i++) {
+            notifications.post(SyncNotice.JOIN_FAILED, "HUB" + i);
+            tick();
+        }
+        assertEquals(Collections.emptyList(), chatLines);
+
+        notifications.post(SyncNotice.JOIN_FAILED, "HUB" + SyncNotifications.MAX_BATCH_TICKS);
+        tick();
+
+        assertEquals(Collections.singletonList(
+                "Unable to join party hub HUB1, unable to join party hub HUB2, unable to join party hub HUB3."),
+                chatLines);
+    }
+
+    @Test
+    public void heldBackWhileNotFlushing() {
+        notifications.post(SyncNotice.LEFT, null);
+        for (int i = 0; i < 10; i++) {
+            notifications.onTick(false);
+        }
+        assertEquals(Collections.emptyList(), chatLines);
+
+        tick();
+        assertEquals(Collections.singletonList("Left the party."), chatLines);
+    }
+
+    @Test
+    public void sinksAreRateLimited() {
+        notifications.post(SyncNotice.JOINED, "330ZEZIMA");
+        int lineTick = settle();
+
+        // The next line waits out the line limit, and skips the desktop until its own limit
+        notifications.post(SyncNotice.LEFT, null);
+        assertEquals(SyncNotifications.MIN_LINE_TICKS, settle() - lineTick);
+        assertEquals(Arrays.asList("Joined party hub 330ZEZIMA.", "Left the party."), chatLines);
+        assertEquals(Collections.singletonList("Joined party hub 330ZEZIMA."), desktopLines);
+
+        while (ticks - lineTick < SyncNotifications.MIN_DESKTOP_TICKS) {
+            tick();
+        }
+        notifications.post(SyncNotice.JOINED, "330WOOX");
+        settle();
+        assertEquals(Arrays.asList("Joined party hub 330ZEZIMA.", "Joined party hub 330WOOX."), desktopLines);
+    }
+
+    @Test
+    public void nothingIsKeptWithEverySinkOff() {
+        notifications.configure(false, false, false);
+        notifications.post(SyncNotice.JOINED, "330ZEZIMA");
+        notifications.configure(true, true, true);
+        settle();
+
+        assertEquals(Collections.emptyList(), chatLines);
+        assertNull(notifications.getOverlayLine());
+    }
+
+    private void tick() {
+        notifications.onTick(true);
+        ticks++;
+    }
+
+    /**
+     * Tick until the pending batch is shown, or for a while if nothing is pending
+     *
+     * @return ticks so far
+     */
+    private int settle() {
+        int lines = chatLines.size();
+        for (int i = 0; i < SyncNotifications.MIN_DESKTOP_TICKS && chatLines.size() == lines; i++) {
+            tick();
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,128 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The HUD roster against the party hub's members, one change at a time from either side.
+ */
+public class TeamReconciliationTest {
+    private final TeamReconciliation reconciliation = new TeamReconciliation();
+
+    @Test
+    public void rosterFirstThenMembers() {
+        reconciliation.rosterJoined("WiseOldMan");
+        reconciliation.rosterJoined("Zezima");
+        assertEquals(Arrays.asList("WiseOldMan", "Zezima"), list(reconciliation.getMissingFromParty()));
+
+        reconciliation.memberJoined(1, "WiseOldMan");
+        assertEquals(Collections.singletonList("Zezima"), list(reconciliation.getMissingFromParty()));
+
+        reconciliation.memberJoined(2, "Zezima");
+        assertReconciled();
+    }
+
+    @Test
+    public void membersFirstThenRoster() {
+        reconciliation.memberJoined(1, "WiseOldMan");
+        reconciliation.memberJoined(2, "Zezima");
+        assertEquals(Arrays.asList("WiseOldMan", "Zezima"), list(reconciliation.getNotOnRoster()));
+
+        reconciliation.onRosterChange(TeamRoster.Change.JOINED, 0, -1, "WiseOldMan");
+        reconciliation.onRosterChange(TeamRoster.Change.JOINED, 1, -1, "Zezima");
+        assertReconciled();
+
+        // A reorder is the same team
+        reconciliation.onRosterChange(TeamRoster.Change.MOVED, 0, 1, "Zezima");
+        assertReconciled();
+    }
+
+    @Test
+    public void leavingInEitherOrder() {
+        reconciliation.rosterJoined("WiseOldMan");
+        reconciliation.rosterJoined("Zezima");
+        reconciliation.memberJoined(1, "WiseOldMan");
+        reconciliation.memberJoined(2, "Zezima");
+
+        reconciliation.rosterLeft("Zezima");
+        assertEquals(Collections.singletonList("Zezima"), list(reconciliation.getNotOnRoster()));
+        reconciliation.memberLeft(2);
+        assertReconciled();
+
+        reconciliation.memberLeft(1);
+        assertEquals(Collections.singletonList("WiseOldMan"), list(reconciliation.getMissingFromParty()));
+        reconciliation.rosterLeft("WiseOldMan");
+        assertReconciled();
+    }
+
+    @Test
+    public void memberNamedAfterJoining() {
+        reconciliation.rosterJoined("Woox");
+        reconciliation.memberJoined(7, null);
+
+        assertEquals(1, reconciliation.getUnnamedMembers());
+        assertEquals(Collections.singletonList("Woox"), list(reconciliation.getMissingFromParty()));
+        assertFalse(reconciliation.isReconciled());
+
+        // Still no name, the member stays unnamed
+        reconciliation.resolveNames(memberId -> null);
+        assertEquals(1, reconciliation.getUnnamedMembers());
+
+        reconciliation.resolveNames(memberId -> memberId == 7 ? "Woox" : null);
+        assertReconciled();
+    }
+
+    @Test
+    public void clearPartyKeepsTheRoster() {
+        reconciliation.rosterJoined("WiseOldMan");
+        reconciliation.rosterJoined("Zezima");
+        reconciliation.memberJoined(1, "WiseOldMan");
+        reconciliation.memberJoined(2, "Zezima");
+        reconciliation.memberJoined(3, "B0aty");
+        reconciliation.memberJoined(4, null);
+
+        reconciliation.clearParty();
+
+        assertEquals(Arrays.asList("WiseOldMan", "Zezima"), list(reconciliation.getMissingFromParty()));
+        assertEquals(Collections.emptyList(), list(reconciliation.getNotOnRoster()));
+        assertEquals(0, reconciliation.getUnnamedMembers());
+
+        // A member leaving the old party afterwards changes nothing
+        reconciliation.memberLeft(1);
+        assertEquals(Arrays.asList("WiseOldMan", "Zezima"), list(reconciliation.getMissingFromParty()));
+    }
+
+    @Test
+    public void twoMembersWithTheSameName() {
+        reconciliation.rosterJoined("Lynx Titan");
+        reconciliation.memberJoined(1, "Lynx Titan");
+        // Compared the way the client compares names
+        reconciliation.memberJoined(2, "lynx_titan");
+        assertReconciled();
+
+        reconciliation.memberLeft(1);
+        assertReconciled();
+
+        reconciliation.memberLeft(2);
+        assertEquals(Collections.singletonList("Lynx Titan"), list(reconciliation.getMissingFromParty()));
+    }
+
+    private void assertReconciled() {
+        assertEquals(Collections.emptyList(), list(reconciliation.getMissingFromParty()));
+        assertEquals(Collections.emptyList(), list(reconciliation.getNotOnRoster()));
+        assertTrue(reconciliation.isReconciled());
+    }
+
+    private static List<String> list(Collection<String> names) {
+        return new ArrayList<>(names);
+    }
+}
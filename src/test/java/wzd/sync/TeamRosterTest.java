@@ -0,0 +1,80 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * HUD updates diffed into joins, leaves and moves, with the mask of the slots that changed.
+ */
+public class TeamRosterTest {
+    private final TobHudNames hud = new TobHudNames();
+    private final TeamRoster roster = new TeamRoster();
+    private final List<String> changes = new ArrayList<>();
+    private final TeamRoster.Listener listener =
+            (change, slot, otherSlot, name) -> changes.add(change + " " + slot + " " + otherSlot + " " + name);
+
+    @Before
+    public void setUp() {
+        assertEquals(0b00111, update("WiseOldMan<br>Zezima<br>Woox<br>-<br>-"));
+        assertEquals(Arrays.asList("JOINED 0 -1 WiseOldMan", "JOINED 1 -1 Zezima", "JOINED 2 -1 Woox"), changes);
+        changes.clear();
+    }
+
+    @Test
+    public void sameTeamChangesNothing() {
+        assertEquals(0, update("WiseOldMan<br>Zezima<br>Woox<br>-<br>-"));
+        assertEquals(Collections.emptyList(), changes);
+        assertEquals(3, roster.size());
+    }
+
+    @Test
+    public void join() {
+        assertEquals(0b01000, update("WiseOldMan<br>Zezima<br>Woox<br>B0aty<br>-"));
+
+        assertEquals(Arrays.asList("JOINED 3 -1 B0aty"), changes);
+        assertEquals(0b01111, roster.getOccupancy());
+        assertEquals(3, roster.indexOf("B0aty"));
+    }
+
+    @Test
+    public void leaveMovesTheRestUp() {
+        assertEquals(0b00110, update("WiseOldMan<br>Woox<br>-<br>-<br>-"));
+
+        assertEquals(Arrays.asList("LEFT 1 -1 Zezima", "MOVED 1 2 Woox"), changes);
+        assertEquals(-1, roster.indexOf("Zezima"));
+        assertEquals(2, roster.size());
+    }
+
+    @Test
+    public void leaderSwap() {
+        int changed = update("Zezima<br>WiseOldMan<br>Woox<br>-<br>-");
+
+        assertEquals(0b00011, changed);
+        assertEquals(TeamRoster.LEADER_SLOT_MASK, changed & TeamRoster.LEADER_SLOT_MASK);
+        assertEquals(Arrays.asList("MOVED 0 1 Zezima", "MOVED 1 0 WiseOldMan"), changes);
+        assertEquals("Zezima", roster.getName(0));
+        assertEquals(0b00111, roster.getOccupancy());
+    }
+
+    @Test
+    public void slotEmptiedToDash() {
+        assertEquals(0b00100, update("WiseOldMan<br>Zezima<br>-<br>-<br>-"));
+
+        assertEquals(Arrays.asList("LEFT 2 -1 Woox"), changes);
+        assertNull(roster.getName(2));
+        assertEquals(0b00011, roster.getOccupancy());
+    }
+
+    private int update(String text) {
+        hud.update(text);
+        return roster.update(hud, listener);
+    }
+}
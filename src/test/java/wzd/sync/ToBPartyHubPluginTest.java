@@ -0,0 +1,106 @@
+package wzd.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPostFired;
+import net.runelite.api.events.VarbitChanged;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The plugin's event handling against the fakes, checking the sync state it publishes
+ * rather than the party calls, which run on the transition thread.
+ */
+public class ToBPartyHubPluginTest {
+    private static final int TOB_VARBIT = 6440;
+    private static final String TEAM = "WiseOldMan<br>Zezima<br>LynxTitan<br>B0aty<br>Woox";
+    private static final String NEW_LEADER = "Zezima<br>WiseOldMan<br>LynxTitan<br>B0aty<br>Woox";
+
+    private final Fakes.HudNames hud = new Fakes.HudNames();
+    private final Fakes.PartyCalls partyCalls = new Fakes.PartyCalls();
+    private final Fakes.QueuedClientThread clientThread = new Fakes.QueuedClientThread();
+    private final GameTick gameTick = new GameTick();
+    private final ScriptPostFired scriptPostFired = new ScriptPostFired();
+
+    private ToBPartyHubPlugin plugin;
+
+    @Before
+    public void setUp() {
+        hud.text = TEAM;
+        // Two tick leader stabilisation window
+        plugin = Fakes.plugin(Fakes.client(330, "Woox", hud), Fakes.config(true, 2),
+                partyCalls::changeParty, clientThread);
+
+        plugin.onVarbitChanged(varbit(TOB_VARBIT, 1));
+        clientThread.runQueued();
+        plugin.onGameTick(gameTick);
+        clientThread.runQueued();
+        assertEquals("330WISEOLDMAN", plugin.getState().getCurrentHub());
+    }
+
+    @After
+    public void tearDown() {
+        Fakes.stop(plugin);
+    }
+
+    @Test
+    public void leaderFlickeringBackKeepsTheHub() {
+        hudChanged(NEW_LEADER);
+        assertEquals("Zezima", plugin.getState().getCandidateLeader());
+
+        // Back before the window ended, and the HUD doesn't change again after that
+        hudChanged(TEAM);
+        assertNull(plugin.getState().getCandidateLeader());
+        for (int i = 0; i < 5; i++) {
+            plugin.onGameTick(gameTick);
+        }
+
+        assertEquals("WiseOldMan", plugin.getState().getLeader());
+        assertEquals("330WISEOLDMAN", plugin.getState().getCurrentHub());
+    }
+
+    @Test
+    public void newLeaderIsFollowedAfterTheWindow() {
+        hudChanged(NEW_LEADER);
+        plugin.onGameTick(gameTick);
+        plugin.onGameTick(gameTick);
+
+        assertEquals("Zezima", plugin.getState().getLeader());
+        assertEquals("330ZEZIMA", plugin.getState().getCurrentHub());
+    }
+
+    @Test
+    public void sameTeamBackInTheRaidRejoinsTheLeadersHub() {
+        plugin.onVarbitChanged(varbit(TOB_VARBIT, 0));
+        clientThread.runQueued();
+        assertNull(plugin.getState().getCurrentHub());
+
+        // The HUD shows the very same names text again
+        plugin.onVarbitChanged(varbit(TOB_VARBIT, 1));
+        clientThread.runQueued();
+        plugin.onGameTick(gameTick);
+
+        assertEquals("WiseOldMan", plugin.getState().getLeader());
+        assertEquals("330WISEOLDMAN", plugin.getState().getCurrentHub());
+    }
+
+    /**
+     * A script redraws the HUD with the given names, picked up on the next tick
+     */
+    private void hudChanged(String text) {
+        hud.text = text;
+        plugin.onScriptPostFired(scriptPostFired);
+        plugin.onGameTick(gameTick);
+        clientThread.runQueued();
+    }
+
+    private static VarbitChanged varbit(int varbitId, int value) {
+        VarbitChanged event = new VarbitChanged();
+        event.setVarbitId(varbitId);
+        event.setValue(value);
+        return event;
+    }
+}